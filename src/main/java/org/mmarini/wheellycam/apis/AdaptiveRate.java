@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.yaml.Locator;
+
+/**
+ * Adapts the capture period between the minimum and maximum bounds.
+ * The period is doubled when the pipeline is saturated, reduced by a quarter while a code is in view
+ * and increased by a quarter when no code has been seen for the idle timeout
+ */
+public class AdaptiveRate {
+    public static final long DEFAULT_MIN_INTERVAL = 100;
+    public static final long DEFAULT_MAX_INTERVAL = 1000;
+    public static final long DEFAULT_IDLE_TIMEOUT = 3000;
+
+    /**
+     * Returns the adaptive rate from configuration
+     *
+     * @param root    the configuration document
+     * @param locator the capture interval configuration locator
+     */
+    public static AdaptiveRate create(JsonNode root, Locator locator) {
+        long min = locator.path("min").getNode(root).asLong(DEFAULT_MIN_INTERVAL);
+        long max = locator.path("max").getNode(root).asLong(DEFAULT_MAX_INTERVAL);
+        long idleTimeout = locator.path("idleTimeout").getNode(root).asLong(DEFAULT_IDLE_TIMEOUT);
+        if (min > max) {
+            throw new IllegalArgumentException(String.format("Capture interval min %d greater than max %d", min, max));
+        }
+        return new AdaptiveRate(min, max, idleTimeout);
+    }
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final long idleTimeout;
+    private long period;
+    private long lastSeen;
+
+    /**
+     * Creates the adaptive rate starting at the maximum interval
+     *
+     * @param minInterval the minimum capture interval (ms)
+     * @param maxInterval the maximum capture interval (ms)
+     * @param idleTimeout the time without codes before slowing down (ms)
+     */
+    public AdaptiveRate(long minInterval, long maxInterval, long idleTimeout) {
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.idleTimeout = idleTimeout;
+        this.period = maxInterval;
+        this.lastSeen = Long.MIN_VALUE;
+    }
+
+    /**
+     * Returns the current capture period (ms)
+     */
+    public synchronized long period() {
+        return period;
+    }
+
+    /**
+     * Registers a code in view
+     *
+     * @param time the capture instant (ms)
+     */
+    public synchronized void seen(long time) {
+        lastSeen = Math.max(lastSeen, time);
+    }
+
+    /**
+     * Returns the capture period updated by the pipeline load (ms)
+     *
+     * @param saturated true if the pipeline is saturated
+     * @param time      the current instant (ms)
+     */
+    public synchronized long update(boolean saturated, long time) {
+        if (saturated) {
+            period = Math.min(period * 2, maxInterval);
+        } else if (time <= lastSeen + idleTimeout) {
+            period = Math.max(period - period / 4, minInterval);
+        } else {
+            period = Math.min(period + Math.max(period / 4, 1), maxInterval);
+        }
+        return period;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.yaml.Locator;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.objdetect.ArucoDetector;
+import org.opencv.objdetect.Dictionary;
+import org.opencv.objdetect.Objdetect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Detects the ArUco markers of a predefined dictionary.
+ * The marker code is the marker id in the dictionary.
+ * Each thread reuses its own detector
+ */
+public class ArucoMarkerDetector implements MarkerDetector {
+    public static final String DEFAULT_DICTIONARY = "DICT_4X4_50";
+    private static final double REGION_PADDING = 0.25;
+
+    /**
+     * Returns the marker detector from configuration
+     *
+     * @param root    the configuration document
+     * @param locator the detector configuration locator
+     */
+    public static ArucoMarkerDetector create(JsonNode root, Locator locator) {
+        String dictionary = locator.path("dictionary").getNode(root).asText(DEFAULT_DICTIONARY);
+        return new ArucoMarkerDetector(dictionaryId(dictionary));
+    }
+
+    /**
+     * Returns the predefined dictionary id
+     *
+     * @param name the dictionary name (e.g. DICT_4X4_50)
+     */
+    static int dictionaryId(String name) {
+        try {
+            return Objdetect.class.getField(name).getInt(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalArgumentException(format("Unknown dictionary \"%s\"", name));
+        }
+    }
+
+    private final ThreadLocal<ArucoDetector> detectors;
+
+    /**
+     * Creates the marker detector
+     *
+     * @param dictionaryId the predefined dictionary id
+     */
+    public ArucoMarkerDetector(int dictionaryId) {
+        this.detectors = ThreadLocal.withInitial(() -> {
+            Dictionary dictionary = Objdetect.getPredefinedDictionary(dictionaryId);
+            return new ArucoDetector(dictionary);
+        });
+    }
+
+    @Override
+    public String decode(Mat image, float[] corners) {
+        Rect region = QrCodeScanner.region(corners, REGION_PADDING, image.width(), image.height());
+        if (region == null) {
+            return "";
+        }
+        Mat crop = image.submat(region);
+        try {
+            List<CameraController.Marker> markers = detect(crop, false);
+            return markers.isEmpty() ? "" : markers.getFirst().code();
+        } finally {
+            crop.release();
+        }
+    }
+
+    @Override
+    public List<CameraController.Marker> detect(Mat image, boolean multi) {
+        List<Mat> corners = new ArrayList<>();
+        Mat ids = new Mat();
+        try {
+            detectors.get().detectMarkers(image, corners, ids);
+            List<CameraController.Marker> result = new ArrayList<>();
+            int n = multi ? corners.size() : Math.min(corners.size(), 1);
+            for (int i = 0; i < n; i++) {
+                float[] points = new float[8];
+                corners.get(i).get(0, 0, points);
+                int id = (int) ids.get(i, 0)[0];
+                result.add(new CameraController.Marker(String.valueOf(id), points));
+            }
+            return result;
+        } finally {
+            corners.forEach(Mat::release);
+            ids.release();
+        }
+    }
+
+    @Override
+    public List<float[]> locate(Mat image, boolean multi) {
+        return detect(image, multi).stream()
+                .map(CameraController.Marker::points)
+                .toList();
+    }
+}
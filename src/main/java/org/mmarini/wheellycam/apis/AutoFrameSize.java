@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.yaml.Locator;
+import org.opencv.core.Rect2d;
+
+import static java.lang.String.format;
+
+/**
+ * Selects the frame size by the detection quality.
+ * The frame size steps down when the codes are consecutively detected larger than the maximum code size
+ * and steps up when the codes are consecutively detected smaller than the minimum code size
+ * or consecutively not detected.
+ * The events of frames with a different size are ignored
+ */
+public class AutoFrameSize {
+    public static final int DEFAULT_MIN_FRAME_SIZE = CameraController.SIZE_160X120;
+    public static final int DEFAULT_MAX_FRAME_SIZE = CameraController.SIZE_800X600;
+    public static final int DEFAULT_MIN_CODE_SIZE = 60;
+    public static final int DEFAULT_MAX_CODE_SIZE = 160;
+    public static final int DEFAULT_STEPS = 5;
+
+    /**
+     * Returns the auto frame size from configuration
+     *
+     * @param root    the configuration document
+     * @param locator the auto frame size configuration locator
+     */
+    public static AutoFrameSize create(JsonNode root, Locator locator) {
+        int minFrameSize = locator.path("min").getNode(root).asInt(DEFAULT_MIN_FRAME_SIZE);
+        int maxFrameSize = locator.path("max").getNode(root).asInt(DEFAULT_MAX_FRAME_SIZE);
+        int minCodeSize = locator.path("minCodeSize").getNode(root).asInt(DEFAULT_MIN_CODE_SIZE);
+        int maxCodeSize = locator.path("maxCodeSize").getNode(root).asInt(DEFAULT_MAX_CODE_SIZE);
+        int steps = locator.path("steps").getNode(root).asInt(DEFAULT_STEPS);
+        if (minFrameSize > maxFrameSize) {
+            throw new IllegalArgumentException(format("Frame size min %d greater than max %d", minFrameSize, maxFrameSize));
+        }
+        if (minCodeSize >= maxCodeSize) {
+            throw new IllegalArgumentException(format("Code size min %d not less than max %d", minCodeSize, maxCodeSize));
+        }
+        return new AutoFrameSize(minFrameSize, maxFrameSize, minCodeSize, maxCodeSize, steps);
+    }
+
+    /**
+     * Returns the size of the code (maximum side of bounding box)
+     *
+     * @param points the code corners (x0, y0, ... x3, y3)
+     */
+    static float codeSize(float[] points) {
+        Rect2d bounds = QrCodeScanner.bounds(points);
+        return (float) Math.max(bounds.width, bounds.height);
+    }
+
+    private final int minFrameSize;
+    private final int maxFrameSize;
+    private final int minCodeSize;
+    private final int maxCodeSize;
+    private final int steps;
+    private int larges;
+    private int smalls;
+
+    /**
+     * Creates the auto frame size
+     *
+     * @param minFrameSize the minimum frame size
+     * @param maxFrameSize the maximum frame size
+     * @param minCodeSize  the minimum code size (pixels)
+     * @param maxCodeSize  the maximum code size (pixels)
+     * @param steps        the number of consecutive events to change the frame size
+     */
+    public AutoFrameSize(int minFrameSize, int maxFrameSize, int minCodeSize, int maxCodeSize, int steps) {
+        this.minFrameSize = minFrameSize;
+        this.maxFrameSize = maxFrameSize;
+        this.minCodeSize = minCodeSize;
+        this.maxCodeSize = maxCodeSize;
+        this.steps = steps;
+    }
+
+    /**
+     * Returns the frame size updated by the detected event
+     *
+     * @param event     the event
+     * @param frameSize the current frame size
+     */
+    public synchronized int update(CameraController.CameraEvent event, int frameSize) {
+        if (event.width() != CameraController.frameWidth(frameSize)
+                || event.height() != CameraController.frameHeight(frameSize)) {
+            // Frame captured before the last change
+            return frameSize;
+        }
+        float size = 0;
+        for (CameraController.Marker marker : event.markers()) {
+            size = Math.max(size, codeSize(marker.points()));
+        }
+        if (size >= maxCodeSize) {
+            larges++;
+            smalls = 0;
+        } else if (size < minCodeSize) {
+            // Small or missing codes
+            smalls++;
+            larges = 0;
+        } else {
+            larges = 0;
+            smalls = 0;
+        }
+        int result = frameSize;
+        if (larges >= steps && frameSize > minFrameSize) {
+            result = frameSize - 1;
+        } else if (smalls >= steps && frameSize < maxFrameSize) {
+            result = frameSize + 1;
+        }
+        if (result != frameSize) {
+            larges = 0;
+            smalls = 0;
+        }
+        return result;
+    }
+}
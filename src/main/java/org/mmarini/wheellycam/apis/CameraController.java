@@ -30,28 +30,31 @@ package org.mmarini.wheellycam.apis;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import org.glassfish.jersey.client.rx.rxjava2.RxFlowableInvokerProvider;
+import org.mmarini.yaml.Locator;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.objdetect.QRCodeDetector;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.imageio.ImageIO;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Controls the webcam
  * -Djava.library.path=C:\opencv\build\java\x64
  */
-public class CameraController {
+public class CameraController implements Closeable {
 
     public static final int SIZE_96X96 = 0;
     public static final int SIZE_160X120 = 1;
@@ -59,7 +62,7 @@ public class CameraController {
     public static final int SIZE_240X176 = 3;
     public static final int SIZE_240X240 = 4;
     public static final int SIZE_320X240 = 5;
-    public static final int SIZE_400X296 = 5;
+    public static final int SIZE_400X296 = 6;
     public static final int SIZE_480x320 = 7;
     public static final int SIZE_640X480 = 8;
     public static final int SIZE_800X600 = 9;
@@ -67,11 +70,43 @@ public class CameraController {
     public static final int SIZE_1280X720 = 11;
     public static final int SIZE_1280X1024 = 12;
     public static final int SIZE_1600X1200 = 13;
+    private static final int[][] FRAME_SIZES = {
+            {96, 96}, {160, 120}, {176, 144}, {240, 176}, {240, 240}, {320, 240}, {400, 296},
+            {480, 320}, {640, 480}, {800, 600}, {1024, 768}, {1280, 720}, {1280, 1024}, {1600, 1200}
+    };
+    public static final int DEFAULT_CONNECT_TIMEOUT = 3000;
+    public static final int DEFAULT_READ_TIMEOUT = 10000;
+    private static final Logger logger = LoggerFactory.getLogger(CameraController.class);
 
     static {
         System.loadLibrary("opencv_java4100");
     }
 
+    /**
+     * Returns the CameraController from configuration
+     *
+     * @param root    the configuration document
+     * @param locator the camera configuration locator
+     */
+    public static CameraController create(JsonNode root, Locator locator) {
+        String url = locator.path("cameraUrl").getNode(root).asText();
+        String streamUrl = locator.path("streamUrl").getNode(root).asText(null);
+        int ledIntensity = locator.path("ledIntensity").getNode(root).asInt(255);
+        int frameSize = locator.path("frameSize").getNode(root).asInt(SIZE_320X240);
+        int connectTimeout = locator.path("connectTimeout").getNode(root).asInt(DEFAULT_CONNECT_TIMEOUT);
+        int readTimeout = locator.path("readTimeout").getNode(root).asInt(DEFAULT_READ_TIMEOUT);
+        DecodeMode decodeMode = DecodeMode.fromId(locator.path("decodeMode").getNode(root).asText(DecodeMode.COLOR.id()));
+        QrCodeScanner scanner = QrCodeScanner.create(root, locator);
+        Locator autoLocator = locator.path("autoFrameSize");
+        AutoFrameSize autoFrameSize = autoLocator.getNode(root).isMissingNode()
+                ? null
+                : AutoFrameSize.create(root, autoLocator);
+        // The buffers are pooled for all the frames in flight in the pipeline
+        int poolSize = CameraPipeline.framesInFlight(root, locator);
+        return create(url, streamUrl, ledIntensity, frameSize, connectTimeout, readTimeout, decodeMode, scanner,
+                autoFrameSize, poolSize);
+    }
+
     /**
      * Returns the CameraController
      *
@@ -83,35 +118,102 @@ public class CameraController {
             String baseUrl,
             int ledIntensity,
             int frameSize) {
-        Client client = ClientBuilder.newClient()
+        return create(baseUrl, null, ledIntensity, frameSize, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DecodeMode.COLOR,
+                new QrCodeScanner(new QRCodeMarkerDetector(), null, null, null, 0, false), null,
+                FrameBufferPool.DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Returns the CameraController
+     *
+     * @param baseUrl        the base url of remote camera
+     * @param streamUrl      the mjpeg stream url of remote camera (null to poll the capture service)
+     * @param ledIntensity   the LED intensity (0...255)
+     * @param frameSize      the frame size
+     * @param connectTimeout the connection timeout (ms)
+     * @param readTimeout    the read timeout (ms)
+     * @param decodeMode     the jpeg decode mode
+     * @param scanner        the qr code scanner
+     * @param autoFrameSize  the auto frame size or null if fixed frame size
+     * @param poolSize       the number of pooled frame buffers
+     */
+    public static CameraController create(
+            String baseUrl,
+            String streamUrl,
+            int ledIntensity,
+            int frameSize,
+            int connectTimeout,
+            int readTimeout,
+            DecodeMode decodeMode,
+            QrCodeScanner scanner,
+            AutoFrameSize autoFrameSize,
+            int poolSize) {
+        Client client = ClientBuilder.newBuilder()
+                .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeout, TimeUnit.MILLISECONDS)
+                .build()
                 .register(RxFlowableInvokerProvider.class);
         WebTarget statusService = client.target(baseUrl + "/status");
-        String captureUrl = baseUrl + "/capture";
         WebTarget ctrlService = client.target(baseUrl + "/control");
-        return new CameraController(statusService, ctrlService, captureUrl, ledIntensity, frameSize);
+        FrameSource source = streamUrl != null
+                ? new MjpegFrameSource(streamUrl, connectTimeout, readTimeout)
+                : CaptureFrameSource.create(baseUrl + "/capture", connectTimeout, readTimeout);
+        return new CameraController(statusService, ctrlService, source, ledIntensity, frameSize, decodeMode, scanner,
+                autoFrameSize, new FrameBufferPool(poolSize));
+    }
+
+    /**
+     * Returns the frame height
+     *
+     * @param frameSize the frame size
+     */
+    public static int frameHeight(int frameSize) {
+        return FRAME_SIZES[frameSize][1];
+    }
+
+    /**
+     * Returns the frame width
+     *
+     * @param frameSize the frame size
+     */
+    public static int frameWidth(int frameSize) {
+        return FRAME_SIZES[frameSize][0];
     }
 
     private final WebTarget statusService;
     private final WebTarget controlService;
-    private final String captureUrl;
+    private final FrameSource source;
     private final int ledIntensity;
-    private final int frameSize;
+    private final DecodeMode decodeMode;
+    private final QrCodeScanner scanner;
+    private final AutoFrameSize autoFrameSize;
+    private final FrameBufferPool bufferPool;
+    private volatile int frameSize;
+    private volatile boolean resync;
 
     /**
      * Creates the webcam controller
      *
      * @param statusService  the status service
      * @param controlService the control service
-     * @param captureUrl     the capture url
+     * @param source         the frame source
      * @param ledIntensity   the LED intensity (0...255)
      * @param frameSize      the frame size
+     * @param decodeMode     the jpeg decode mode
+     * @param scanner        the qr code scanner
+     * @param autoFrameSize  the auto frame size or null if fixed frame size
+     * @param bufferPool     the frame buffer pool
      */
-    protected CameraController(WebTarget statusService, WebTarget controlService, String captureUrl, int ledIntensity, int frameSize) {
+    protected CameraController(WebTarget statusService, WebTarget controlService, FrameSource source, int ledIntensity, int frameSize, DecodeMode decodeMode, QrCodeScanner scanner, AutoFrameSize autoFrameSize, FrameBufferPool bufferPool) {
         this.statusService = statusService;
         this.controlService = controlService;
-        this.captureUrl = captureUrl;
+        this.source = source;
         this.ledIntensity = ledIntensity;
         this.frameSize = frameSize;
+        this.decodeMode = decodeMode;
+        this.scanner = scanner;
+        this.autoFrameSize = autoFrameSize;
+        this.bufferPool = bufferPool;
     }
 
     /**
@@ -120,11 +222,7 @@ public class CameraController {
      * @throws IOException in case of error
      */
     Mat capture() throws IOException {
-        BufferedImage img = ImageIO.read(URI.create(captureUrl + "?_cb=" + System.currentTimeMillis()).toURL());
-        byte[] pixels = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
-        Mat mat = new Mat(img.getHeight(), img.getWidth(), CvType.CV_8UC(3));
-        mat.put(0, 0, pixels);
-        return mat;
+        return decode(fetch());
     }
 
     /**
@@ -133,11 +231,13 @@ public class CameraController {
      * @throws IOException in case of error
      */
     public CameraEvent captureQrCode() throws IOException {
-        Mat image = capture();
-        long timestamp = System.currentTimeMillis();
-        Mat points = new Mat();
-        String data = new QRCodeDetector().detectAndDecode(image, points);
-        return new CameraEvent(timestamp, data, image.width(), image.height(), points);
+        Frame frame = fetch();
+        return detect(frame.timestamp(), decode(frame));
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
     }
 
     /**
@@ -155,6 +255,90 @@ public class CameraController {
         return resp.getStatus() == HttpURLConnection.HTTP_OK;
     }
 
+    /**
+     * Returns the image decoded from the frame.
+     * The jpeg image is decoded directly from the pooled buffer with the decode mode
+     * and the buffer is returned to the pool
+     *
+     * @param frame the frame
+     * @throws IOException in case of error
+     */
+    public Mat decode(Frame frame) throws IOException {
+        Mat data = new Mat(1, frame.data().remaining(), CvType.CV_8UC1, frame.data());
+        try {
+            Mat image = Imgcodecs.imdecode(data, decodeMode.flags());
+            if (image.empty()) {
+                image.release();
+                throw new IOException("Unsupported image format");
+            }
+            return image;
+        } finally {
+            data.release();
+            release(frame);
+        }
+    }
+
+    /**
+     * Returns the qr code event detected in the image.
+     * In auto frame size the frame size is updated by the event and the resynchronization required on change.
+     * The image is released
+     *
+     * @param timestamp the capture timestamp
+     * @param image     the decoded image
+     */
+    public CameraEvent detect(long timestamp, Mat image) {
+        try {
+            CameraEvent event = scanner.scan(timestamp, image, decodeMode.scale());
+            if (autoFrameSize != null) {
+                updateFrameSize(event);
+            }
+            return event;
+        } finally {
+            // Releases the native memory
+            image.release();
+        }
+    }
+
+    /**
+     * Returns the frame fetched from the camera into a pooled buffer
+     *
+     * @throws IOException in case of error
+     */
+    public Frame fetch() throws IOException {
+        int size = frameSize;
+        ByteBuffer buffer = bufferPool.borrow(size);
+        try {
+            buffer = source.read(buffer);
+        } catch (IOException e) {
+            bufferPool.giveBack(size, buffer);
+            throw e;
+        }
+        return new Frame(System.currentTimeMillis(), size, buffer);
+    }
+
+    /**
+     * Returns the current frame size
+     */
+    public int frameSize() {
+        return frameSize;
+    }
+
+    /**
+     * Returns the frame buffer to the pool
+     *
+     * @param frame the frame
+     */
+    public void release(Frame frame) {
+        bufferPool.giveBack(frame.frameSize(), frame.data());
+    }
+
+    /**
+     * Returns true if the camera must be resynchronized for a frame size change
+     */
+    public boolean resyncRequired() {
+        return resync;
+    }
+
     /**
      * Returns the status of webcam configuration
      */
@@ -165,10 +349,18 @@ public class CameraController {
                 });
     }
 
+    /**
+     * Returns true if the frames are read from the camera stream
+     */
+    public boolean streaming() {
+        return source.streaming();
+    }
+
     /**
      * Returns the action to synchronize the status
      */
     public boolean sync() {
+        resync = false;
         JsonNode json = status();
         if (json.path("led_intensity").asInt() != ledIntensity) {
             if (!control("led_intensity", ledIntensity)) {
@@ -181,16 +373,63 @@ public class CameraController {
         return true;
     }
 
+    /**
+     * Updates the frame size by the detected event
+     *
+     * @param event the event
+     */
+    private synchronized void updateFrameSize(CameraEvent event) {
+        int size = autoFrameSize.update(event, frameSize);
+        if (size != frameSize) {
+            logger.atInfo().log("Frame size changed to {}x{}", frameWidth(size), frameHeight(size));
+            frameSize = size;
+            resync = true;
+            // The tracked region and the gated scene refer to the previous resolution
+            scanner.reset();
+        }
+    }
+
     /**
      * Stores the Camera Event properties
      *
      * @param timestamp the event timestamp
-     * @param qrcode    the qr code (? if unrecognized)
      * @param width     the camera image width
      * @param height    the camera image height
-     * @param points    the qr code vertices
+     * @param markers   the decoded qr codes
+     */
+    public record CameraEvent(long timestamp, int width, int height, List<Marker> markers) {
+        /**
+         * Returns the first qr code ("" if unrecognized)
+         */
+        public String qrcode() {
+            return markers.isEmpty() ? "" : markers.getFirst().code();
+        }
+
+        /**
+         * Returns the first qr code vertices coordinates (x0, y0, x1, y1, x2, y2, x3, y3)
+         */
+        public float[] points() {
+            return markers.isEmpty() ? new float[8] : markers.getFirst().points();
+        }
+    }
+
+    /**
+     * Stores the decoded qr code
+     *
+     * @param code   the qr code
+     * @param points the qr code vertices coordinates (x0, y0, x1, y1, x2, y2, x3, y3)
+     */
+    public record Marker(String code, float[] points) {
+    }
+
+    /**
+     * Stores the fetched jpeg image
+     *
+     * @param timestamp the capture timestamp
+     * @param frameSize the frame size
+     * @param data      the pooled buffer with the jpeg image
      */
-    public record CameraEvent(long timestamp, String qrcode, int width, int height, Mat points) {
+    public record Frame(long timestamp, int frameSize, ByteBuffer data) {
     }
 
 }
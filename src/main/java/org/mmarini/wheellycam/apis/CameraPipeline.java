@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.yaml.Locator;
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+
+/**
+ * Runs the camera capture as a pipeline of stages (fetch, decode, detect, publish)
+ * connected by bounded queues, each stage running on dedicated threads.
+ * The decode and detect stages run on a pool of workers and the events are resequenced
+ * by capture order before publishing.
+ * In latest frame mode the fetch stage replaces the frames not yet decoded (latest wins).
+ * The frames are fetched at fixed rate, or at adaptive rate if the capture interval has bounds,
+ * or as they arrive from the camera stream, and the stage latencies are reported at the metrics interval
+ */
+public class CameraPipeline {
+    public static final int DEFAULT_QUEUE_SIZE = 2;
+    public static final int DEFAULT_WORKERS = 1;
+    public static final long DEFAULT_CAPTURE_INTERVAL = 800;
+    public static final long DEFAULT_SYNC_INTERVAL = 30000;
+    public static final long DEFAULT_METRICS_INTERVAL = 60000;
+    public static final long MIN_RETRY_INTERVAL = 500;
+    private static final Logger logger = LoggerFactory.getLogger(CameraPipeline.class);
+
+    /**
+     * Returns the pipeline from configuration
+     *
+     * @param root      the configuration document
+     * @param locator   the pipeline configuration locator
+     * @param camera    the camera controller
+     * @param metrics   the stage latency metrics
+     * @param publisher the event publisher
+     */
+    public static CameraPipeline create(JsonNode root, Locator locator, CameraController camera,
+                                        LatencyMetrics metrics, Consumer<CameraController.CameraEvent> publisher) {
+        Locator intervalLocator = locator.path("captureInterval");
+        AdaptiveRate rate = intervalLocator.getNode(root).isObject()
+                ? AdaptiveRate.create(root, intervalLocator)
+                : null;
+        long captureInterval = rate != null
+                ? rate.period()
+                : intervalLocator.getNode(root).asLong(DEFAULT_CAPTURE_INTERVAL);
+        long syncInterval = locator.path("syncInterval").getNode(root).asLong(DEFAULT_SYNC_INTERVAL);
+        int queueSize = locator.path("queueSize").getNode(root).asInt(DEFAULT_QUEUE_SIZE);
+        int workers = locator.path("workers").getNode(root).asInt(DEFAULT_WORKERS);
+        long metricsInterval = locator.path("metricsInterval").getNode(root).asLong(DEFAULT_METRICS_INTERVAL);
+        String backpressure = locator.path("backpressure").getNode(root).asText("block");
+        boolean latestFrame = switch (backpressure) {
+            case "block" -> false;
+            case "latest" -> true;
+            default -> throw new IllegalArgumentException(format("Unknown backpressure \"%s\"", backpressure));
+        };
+        return new CameraPipeline(camera, captureInterval, rate, syncInterval, queueSize, workers, latestFrame,
+                metricsInterval, metrics, publisher);
+    }
+
+    /**
+     * Returns the maximum number of frames in flight from configuration:
+     * the frame being fetched, the queued frames and the frames being decoded
+     *
+     * @param root    the configuration document
+     * @param locator the pipeline configuration locator
+     */
+    public static int framesInFlight(JsonNode root, Locator locator) {
+        int queueSize = locator.path("queueSize").getNode(root).asInt(DEFAULT_QUEUE_SIZE);
+        int workers = locator.path("workers").getNode(root).asInt(DEFAULT_WORKERS);
+        return 1 + queueSize + workers;
+    }
+
+    private final CameraController camera;
+    private final long captureInterval;
+    private final AdaptiveRate rate;
+    private final long syncInterval;
+    private final int workers;
+    private final boolean latestFrame;
+    private final long metricsInterval;
+    private final Consumer<CameraController.CameraEvent> publisher;
+    private final AtomicLong processedFrames;
+    private final AtomicLong droppedFrames;
+    private final CaptureScheduler scheduler;
+    private final LatencyMetrics metrics;
+    private final BlockingQueue<Job> frames;
+    private final BlockingQueue<Image> images;
+    private final Resequencer<CameraController.CameraEvent> resequencer;
+    private List<Thread> threads;
+
+    /**
+     * Creates the pipeline
+     *
+     * @param camera          the camera controller
+     * @param captureInterval the capture interval (ms)
+     * @param rate            the adaptive capture rate or null if fixed rate
+     * @param syncInterval    the camera synchronization interval (ms)
+     * @param queueSize       the size of stage queues
+     * @param workers         the number of decode and detect workers
+     * @param latestFrame     true if the frames not yet decoded are replaced by the latest one
+     * @param metricsInterval the latency report interval (ms) or 0 if no report
+     * @param metrics         the stage latency metrics
+     * @param publisher       the event publisher
+     */
+    public CameraPipeline(CameraController camera, long captureInterval, AdaptiveRate rate, long syncInterval,
+                          int queueSize, int workers, boolean latestFrame, long metricsInterval,
+                          LatencyMetrics metrics, Consumer<CameraController.CameraEvent> publisher) {
+        this.camera = camera;
+        this.captureInterval = captureInterval;
+        this.rate = rate;
+        this.syncInterval = syncInterval;
+        this.workers = workers;
+        this.latestFrame = latestFrame;
+        this.metricsInterval = metricsInterval;
+        this.publisher = publisher;
+        this.processedFrames = new AtomicLong();
+        this.droppedFrames = new AtomicLong();
+        this.scheduler = new CaptureScheduler(captureInterval);
+        this.metrics = metrics;
+        this.frames = new ArrayBlockingQueue<>(latestFrame ? 1 : queueSize);
+        this.images = new ArrayBlockingQueue<>(queueSize);
+        this.resequencer = new Resequencer<>();
+        this.threads = List.of();
+    }
+
+    /**
+     * Returns the number of frames dropped by latest frame mode
+     */
+    public long droppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Waits for the pipeline termination
+     *
+     * @throws InterruptedException if interrupted
+     */
+    public void join() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Returns the stage latency metrics
+     */
+    public LatencyMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of capture periods overrun by the fetch stage
+     */
+    public long overruns() {
+        return scheduler.overruns();
+    }
+
+    /**
+     * Returns the number of frames processed by decode stage
+     */
+    public long processedFrames() {
+        return processedFrames.get();
+    }
+
+    /**
+     * Puts the frame to the decode stage
+     * In latest frame mode the frame replaces the pending ones
+     *
+     * @param job the frame job
+     * @throws InterruptedException if interrupted
+     */
+    void putFrame(Job job) throws InterruptedException {
+        if (!latestFrame) {
+            frames.put(job);
+            return;
+        }
+        while (!frames.offer(job)) {
+            Job superseded = frames.poll();
+            if (superseded != null) {
+                camera.release(superseded.frame());
+                droppedFrames.incrementAndGet();
+                resequencer.skip(superseded.seq());
+            }
+        }
+    }
+
+    /**
+     * Returns the event resequencer
+     */
+    Resequencer<CameraController.CameraEvent> resequencer() {
+        return resequencer;
+    }
+
+    /**
+     * Runs the decode stage
+     */
+    private void runDecode() {
+        try {
+            for (; ; ) {
+                Job job = frames.take();
+                processedFrames.incrementAndGet();
+                Mat image;
+                try {
+                    long start = System.nanoTime();
+                    image = camera.decode(job.frame());
+                    metrics.record(LatencyMetrics.Stage.DECODE, start);
+                } catch (IOException | RuntimeException e) {
+                    logger.atError().setCause(e).log("Error decoding image");
+                    resequencer.skip(job.seq());
+                    continue;
+                }
+                images.put(new Image(job.seq(), job.frame().timestamp(), image));
+            }
+        } catch (InterruptedException e) {
+            logger.atDebug().log("Decode stage interrupted");
+        }
+    }
+
+    /**
+     * Runs the detect stage
+     */
+    private void runDetect() {
+        try {
+            for (; ; ) {
+                Image image = images.take();
+                CameraController.CameraEvent event;
+                try {
+                    long start = System.nanoTime();
+                    event = camera.detect(image.timestamp(), image.image());
+                    metrics.record(LatencyMetrics.Stage.DETECT, start);
+                    if (rate != null && !event.markers().isEmpty()) {
+                        rate.seen(event.timestamp());
+                    }
+                } catch (RuntimeException e) {
+                    logger.atError().setCause(e).log("Error detecting qrcode");
+                    resequencer.skip(image.seq());
+                    continue;
+                }
+                resequencer.put(image.seq(), event);
+            }
+        } catch (InterruptedException e) {
+            logger.atDebug().log("Detect stage interrupted");
+        }
+    }
+
+    /**
+     * Runs the fetch stage synchronizing the camera
+     */
+    private void runFetch() {
+        long seq = 0;
+        long syncTimeout = 0;
+        long overruns = 0;
+        boolean synchro = false;
+        // Backs off the camera requests after a failure even with back to back captures
+        long retryInterval = Math.max(captureInterval, MIN_RETRY_INTERVAL);
+        boolean streaming = camera.streaming();
+        try {
+            for (; ; ) {
+                long time = System.currentTimeMillis();
+                if (time >= syncTimeout || !synchro || camera.resyncRequired()) {
+                    logger.atInfo().log("Frames processed {}, dropped {}, overruns {}, period {} ms",
+                            processedFrames.get(), droppedFrames.get(), scheduler.overruns(), scheduler.period());
+                    logger.atInfo().log("Synchronizing camera ...");
+                    try {
+                        if (camera.sync()) {
+                            syncTimeout = time + syncInterval;
+                            synchro = true;
+                            scheduler.reset();
+                        }
+                    } catch (RuntimeException e) {
+                        logger.atError().setCause(e).log("Error synchronizing camera");
+                        synchro = false;
+                    }
+                }
+                if (!synchro) {
+                    Thread.sleep(retryInterval);
+                } else {
+                    try {
+                        logger.atDebug().log("Capturing QRCode ...");
+                        long start = System.nanoTime();
+                        CameraController.Frame frame = camera.fetch();
+                        metrics.record(LatencyMetrics.Stage.FETCH, start);
+                        // The previous frame not yet decoded means saturation
+                        boolean pending = !frames.isEmpty();
+                        putFrame(new Job(seq, frame));
+                        seq++;
+                        // The stream paces the reads, waiting would leave stale frames in the socket backlog
+                        if (!streaming) {
+                            if (rate != null) {
+                                boolean saturated = pending || scheduler.overruns() > overruns;
+                                overruns = scheduler.overruns();
+                                scheduler.period(rate.update(saturated, System.currentTimeMillis()));
+                            }
+                            scheduler.await();
+                        }
+                    } catch (IOException e) {
+                        logger.atError().setCause(e).log("Error capturing qrcode");
+                        synchro = false;
+                        Thread.sleep(retryInterval);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.atDebug().log("Fetch stage interrupted");
+        }
+    }
+
+    /**
+     * Runs the publish stage
+     */
+    private void runPublish() {
+        try {
+            for (; ; ) {
+                CameraController.CameraEvent event = resequencer.take();
+                try {
+                    publisher.accept(event);
+                } catch (RuntimeException e) {
+                    logger.atError().setCause(e).log("Error publishing event");
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.atDebug().log("Publish stage interrupted");
+        }
+    }
+
+    /**
+     * Runs the latency report
+     */
+    private void runReport() {
+        try {
+            for (; ; ) {
+                Thread.sleep(metricsInterval);
+                metrics.report();
+            }
+        } catch (InterruptedException e) {
+            logger.atDebug().log("Report interrupted");
+        }
+    }
+
+    /**
+     * Starts the pipeline stages
+     */
+    public CameraPipeline start() {
+        threads = Stream.of(
+                        Stream.of(new Thread(this::runFetch, "camera-fetch")),
+                        IntStream.range(0, workers)
+                                .mapToObj(i -> new Thread(this::runDecode, "camera-decode-" + i)),
+                        IntStream.range(0, workers)
+                                .mapToObj(i -> new Thread(this::runDetect, "camera-detect-" + i)),
+                        Stream.of(new Thread(this::runPublish, "camera-publish")),
+                        metricsInterval > 0
+                                ? Stream.of(new Thread(this::runReport, "camera-report"))
+                                : Stream.<Thread>empty())
+                .flatMap(s -> s)
+                .toList();
+        threads.forEach(Thread::start);
+        return this;
+    }
+
+    /**
+     * Stops the pipeline stages
+     */
+    public void stop() {
+        threads.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Stores the decoded image
+     *
+     * @param seq       the capture sequence number
+     * @param timestamp the capture timestamp
+     * @param image     the image
+     */
+    record Image(long seq, long timestamp, Mat image) {
+    }
+
+    /**
+     * Stores the fetched frame
+     *
+     * @param seq   the capture sequence number
+     * @param frame the frame
+     */
+    record Job(long seq, CameraController.Frame frame) {
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.lang.String.format;
+
+/**
+ * Polls the camera capture service for each frame.
+ * The requests are sent by a long-lived http client that keeps alive the connection
+ * and the responses are received into the given direct buffers.
+ * The whole exchange, headers and body, is bounded by the read timeout
+ */
+public class CaptureFrameSource implements FrameSource {
+    /**
+     * Returns the frame source
+     *
+     * @param captureUrl     the capture url
+     * @param connectTimeout the connection timeout (ms)
+     * @param readTimeout    the response timeout (ms)
+     */
+    public static CaptureFrameSource create(String captureUrl, long connectTimeout, long readTimeout) {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .build();
+        return new CaptureFrameSource(client, captureUrl, Duration.ofMillis(readTimeout));
+    }
+
+    private final HttpClient client;
+    private final String captureUrl;
+    private final Duration readTimeout;
+
+    /**
+     * Creates the frame source
+     *
+     * @param client      the http client
+     * @param captureUrl  the capture url
+     * @param readTimeout the response timeout
+     */
+    protected CaptureFrameSource(HttpClient client, String captureUrl, Duration readTimeout) {
+        this.client = client;
+        this.captureUrl = captureUrl;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public ByteBuffer read(ByteBuffer buffer) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(captureUrl + "?_cb=" + System.currentTimeMillis()))
+                .timeout(readTimeout)
+                .GET()
+                .build();
+        BufferSubscriber subscriber = new BufferSubscriber(buffer);
+        CompletableFuture<HttpResponse<ByteBuffer>> future = client.sendAsync(request, info -> {
+            subscriber.ensureCapacity((int) info.headers().firstValueAsLong("Content-Length").orElse(0));
+            return subscriber;
+        });
+        HttpResponse<ByteBuffer> response;
+        try {
+            response = future.get(readTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            subscriber.abort();
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (TimeoutException e) {
+            // Stops writing the buffer before it is returned to the caller
+            subscriber.abort();
+            future.cancel(true);
+            throw new HttpTimeoutException(format("Capture timed out after %d ms from %s",
+                    readTimeout.toMillis(), captureUrl));
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ex
+                    ? ex
+                    : new IOException(e.getCause());
+        }
+        if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException(format("Unexpected status %d from %s", response.statusCode(), captureUrl));
+        }
+        return response.body();
+    }
+
+    /**
+     * Receives the response body into the direct buffer.
+     * The buffer is replaced by a larger one if it does not fit the body
+     */
+    private static class BufferSubscriber implements HttpResponse.BodySubscriber<ByteBuffer> {
+        private final CompletableFuture<ByteBuffer> body;
+        private ByteBuffer buffer;
+        private Flow.Subscription subscription;
+        private boolean aborted;
+
+        /**
+         * Creates the subscriber
+         *
+         * @param buffer the direct buffer
+         */
+        BufferSubscriber(ByteBuffer buffer) {
+            this.buffer = buffer.clear();
+            this.body = new CompletableFuture<>();
+        }
+
+        /**
+         * Stops receiving the body
+         */
+        synchronized void abort() {
+            aborted = true;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        /**
+         * Ensures the buffer capacity
+         *
+         * @param size the required capacity
+         */
+        synchronized void ensureCapacity(int size) {
+            buffer = FrameSource.ensureCapacity(buffer, size);
+        }
+
+        @Override
+        public CompletionStage<ByteBuffer> getBody() {
+            return body;
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            body.complete(buffer.flip());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public synchronized void onNext(List<ByteBuffer> items) {
+            if (!aborted) {
+                for (ByteBuffer item : items) {
+                    buffer = FrameSource.ensureCapacity(buffer, buffer.position() + item.remaining());
+                    buffer.put(item);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (aborted) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules the captures at fixed rate.
+ * The wait subtracts the processing time from the period so the capture instants do not drift with load.
+ * When the processing exceeds the period the overrun is counted and the schedule restarts
+ * from the current instant without bursts of captures to catch up.
+ * A zero period runs the captures back to back
+ */
+public class CaptureScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(CaptureScheduler.class);
+
+    private final AtomicLong overruns;
+    private volatile long period;
+    private long next;
+
+    /**
+     * Creates the scheduler
+     *
+     * @param period the capture period (ms)
+     */
+    public CaptureScheduler(long period) {
+        this.period = TimeUnit.MILLISECONDS.toNanos(period);
+        this.overruns = new AtomicLong();
+        this.next = System.nanoTime();
+    }
+
+    /**
+     * Waits for the next capture instant
+     *
+     * @throws InterruptedException if interrupted
+     */
+    public void await() throws InterruptedException {
+        long now = System.nanoTime();
+        if (period <= 0) {
+            // Free running captures: no wait and no overrun
+            next = now;
+            return;
+        }
+        next += period;
+        long delay = next - now;
+        if (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        } else {
+            overruns.incrementAndGet();
+            logger.atDebug().log("Capture overrun by {} ms", TimeUnit.NANOSECONDS.toMillis(-delay));
+            next = now;
+        }
+    }
+
+    /**
+     * Returns the number of overrun periods
+     */
+    public long overruns() {
+        return overruns.get();
+    }
+
+    /**
+     * Returns the capture period (ms)
+     */
+    public long period() {
+        return TimeUnit.NANOSECONDS.toMillis(period);
+    }
+
+    /**
+     * Sets the capture period
+     *
+     * @param period the capture period (ms)
+     */
+    public void period(long period) {
+        this.period = TimeUnit.MILLISECONDS.toNanos(period);
+    }
+
+    /**
+     * Restarts the schedule from the current instant
+     */
+    public void reset() {
+        next = System.nanoTime();
+    }
+}
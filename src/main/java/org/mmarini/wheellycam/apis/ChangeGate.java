@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.yaml.Locator;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Gates the detection by the changes of the scene.
+ * The image is compared by mean absolute difference of a downsampled grayscale thumbnail
+ * against the last detected image and, if the difference does not exceed the threshold,
+ * the last detected event is reused with the new timestamp.
+ * The detection is forced after a maximum number of consecutive reuses
+ */
+public class ChangeGate {
+    public static final double DEFAULT_THRESHOLD = 2;
+    public static final int DEFAULT_MAX_SKIPS = 10;
+    private static final Size THUMBNAIL_SIZE = new Size(32, 24);
+
+    /**
+     * Returns the gate from configuration
+     *
+     * @param root    the configuration document
+     * @param locator the gate configuration locator
+     */
+    public static ChangeGate create(JsonNode root, Locator locator) {
+        double threshold = locator.path("threshold").getNode(root).asDouble(DEFAULT_THRESHOLD);
+        int maxSkips = locator.path("maxSkips").getNode(root).asInt(DEFAULT_MAX_SKIPS);
+        return new ChangeGate(threshold, maxSkips);
+    }
+
+    /**
+     * Returns the grayscale thumbnail of the image
+     *
+     * @param image the image
+     */
+    private static Mat thumbnail(Mat image) {
+        Mat thumbnail = new Mat();
+        Imgproc.resize(image, thumbnail, THUMBNAIL_SIZE, 0, 0, Imgproc.INTER_AREA);
+        if (thumbnail.channels() > 1) {
+            Imgproc.cvtColor(thumbnail, thumbnail, Imgproc.COLOR_BGR2GRAY);
+        }
+        return thumbnail;
+    }
+
+    private final double threshold;
+    private final int maxSkips;
+    private Mat reference;
+    private CameraController.CameraEvent lastEvent;
+    private int skips;
+    private int width;
+    private int height;
+
+    /**
+     * Creates the gate
+     *
+     * @param threshold the maximum mean absolute difference of unchanged scene (0 - 255)
+     * @param maxSkips  the maximum number of consecutive reused events
+     */
+    public ChangeGate(double threshold, int maxSkips) {
+        this.threshold = threshold;
+        this.maxSkips = maxSkips;
+    }
+
+    /**
+     * Clears the reference image and the last event
+     */
+    public synchronized void reset() {
+        if (reference != null) {
+            reference.release();
+            reference = null;
+        }
+        lastEvent = null;
+        skips = 0;
+    }
+
+    /**
+     * Returns the last detected event with the new timestamp if the scene is unchanged
+     * or null if the image must be detected
+     *
+     * @param timestamp the capture timestamp
+     * @param image     the decoded image
+     */
+    public synchronized CameraController.CameraEvent reuse(long timestamp, Mat image) {
+        Mat thumbnail = thumbnail(image);
+        if (reference != null && lastEvent != null && skips < maxSkips
+                && reference.type() == thumbnail.type()
+                && image.width() == width && image.height() == height) {
+            Mat diff = new Mat();
+            try {
+                Core.absdiff(thumbnail, reference, diff);
+                if (Core.mean(diff).val[0] <= threshold) {
+                    skips++;
+                    thumbnail.release();
+                    return new CameraController.CameraEvent(timestamp,
+                            lastEvent.width(), lastEvent.height(), lastEvent.markers());
+                }
+            } finally {
+                diff.release();
+            }
+        }
+        // Changed scene: the image becomes the reference and no event is reused until detected
+        if (reference != null) {
+            reference.release();
+        }
+        reference = thumbnail;
+        width = image.width();
+        height = image.height();
+        lastEvent = null;
+        skips = 0;
+        return null;
+    }
+
+    /**
+     * Updates the gate with the detected event
+     *
+     * @param event  the event
+     * @param width  the detected image width
+     * @param height the detected image height
+     */
+    public synchronized void update(CameraController.CameraEvent event, int width, int height) {
+        // Ignores the events of images at a different resolution from the reference
+        if (width == this.width && height == this.height) {
+            lastEvent = event;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.yaml.Locator;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the decoded qr codes by the module matrix of the rectified code region.
+ * The region is warped to a square, binarized and sampled at the module centers of the qr code size
+ * that best matches the finder and timing patterns.
+ * The module matrix is the encoded payload, so distinct codes never share the fingerprint,
+ * while the sub-pixel jitter of the corners does not move the module centers.
+ * The regions not matching any qr code size have no fingerprint and are not cached.
+ * The least recently used codes are evicted when the cache is full
+ */
+public class DecodeCache {
+    public static final int DEFAULT_SIZE = 64;
+    private static final int WARP_SIZE = 256;
+    private static final int MAX_VERSION = 10;
+    private static final double MIN_PATTERN_MATCH = 0.95;
+
+    /**
+     * Returns the cache from configuration
+     *
+     * @param root    the configuration document
+     * @param locator the cache configuration locator
+     */
+    public static DecodeCache create(JsonNode root, Locator locator) {
+        int size = locator.path("size").getNode(root).asInt(DEFAULT_SIZE);
+        return new DecodeCache(size);
+    }
+
+    /**
+     * Returns the module of the fixed patterns (1 dark, 0 light) or -1 if data module
+     *
+     * @param row     the module row
+     * @param col     the module column
+     * @param modules the number of modules per side
+     */
+    private static int fixedModule(int row, int col, int modules) {
+        if (row < 8 && col < 8) {
+            return finderModule(row, col);
+        } else if (row < 8 && col >= modules - 8) {
+            return finderModule(row, modules - 1 - col);
+        } else if (row >= modules - 8 && col < 8) {
+            return finderModule(modules - 1 - row, col);
+        } else if (row == 6) {
+            return 1 - col % 2;
+        } else if (col == 6) {
+            return 1 - row % 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the module of the finder pattern with separator (1 dark, 0 light)
+     *
+     * @param row the module row from the code corner
+     * @param col the module column from the code corner
+     */
+    private static int finderModule(int row, int col) {
+        return row == 7 || col == 7 || Math.max(Math.abs(row - 3), Math.abs(col - 3)) == 2
+                ? 0 : 1;
+    }
+
+    /**
+     * Returns the fingerprint of the code region or null if no qr code module matrix matches the region
+     *
+     * @param image   the image
+     * @param corners the code corners (x0, y0, ... x3, y3)
+     */
+    public static Fingerprint fingerprint(Mat image, float[] corners) {
+        MatOfPoint2f src = new MatOfPoint2f(
+                new Point(corners[0], corners[1]),
+                new Point(corners[2], corners[3]),
+                new Point(corners[4], corners[5]),
+                new Point(corners[6], corners[7]));
+        MatOfPoint2f dst = new MatOfPoint2f(
+                new Point(0, 0),
+                new Point(WARP_SIZE, 0),
+                new Point(WARP_SIZE, WARP_SIZE),
+                new Point(0, WARP_SIZE));
+        Mat transform = Imgproc.getPerspectiveTransform(src, dst);
+        Mat warped = new Mat();
+        try {
+            Imgproc.warpPerspective(image, warped, transform, new Size(WARP_SIZE, WARP_SIZE), Imgproc.INTER_LINEAR);
+            if (warped.channels() > 1) {
+                Imgproc.cvtColor(warped, warped, Imgproc.COLOR_BGR2GRAY);
+            }
+            Imgproc.threshold(warped, warped, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+            byte[] pixels = new byte[WARP_SIZE * WARP_SIZE];
+            warped.get(0, 0, pixels);
+            Fingerprint result = null;
+            double best = MIN_PATTERN_MATCH;
+            for (int version = 1; version <= MAX_VERSION; version++) {
+                int modules = 17 + version * 4;
+                BitSet bits = new BitSet(modules * modules);
+                int fixed = 0;
+                int matched = 0;
+                for (int row = 0; row < modules; row++) {
+                    int y = (row * 2 + 1) * WARP_SIZE / (modules * 2);
+                    for (int col = 0; col < modules; col++) {
+                        int x = (col * 2 + 1) * WARP_SIZE / (modules * 2);
+                        boolean dark = pixels[y * WARP_SIZE + x] == 0;
+                        bits.set(row * modules + col, dark);
+                        int expected = fixedModule(row, col, modules);
+                        if (expected >= 0) {
+                            fixed++;
+                            if ((expected == 1) == dark) {
+                                matched++;
+                            }
+                        }
+                    }
+                }
+                double match = (double) matched / fixed;
+                if (match >= best) {
+                    best = match;
+                    result = new Fingerprint(modules, bits);
+                }
+            }
+            return result;
+        } finally {
+            src.release();
+            dst.release();
+            transform.release();
+            warped.release();
+        }
+    }
+
+    private final Map<Fingerprint, String> codes;
+
+    /**
+     * Creates the cache
+     *
+     * @param size the maximum number of cached codes
+     */
+    public DecodeCache(int size) {
+        this.codes = new LinkedHashMap<>(size, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, String> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached code or null if not cached
+     *
+     * @param fingerprint the code region fingerprint
+     */
+    public synchronized String get(Fingerprint fingerprint) {
+        return codes.get(fingerprint);
+    }
+
+    /**
+     * Caches the code
+     *
+     * @param fingerprint the code region fingerprint
+     * @param code        the code
+     */
+    public synchronized void put(Fingerprint fingerprint, String code) {
+        codes.put(fingerprint, code);
+    }
+
+    /**
+     * Returns the number of cached codes
+     */
+    public synchronized int size() {
+        return codes.size();
+    }
+
+    /**
+     * Stores the module matrix of a qr code
+     *
+     * @param modules the number of modules per side
+     * @param bits    the dark modules by row
+     */
+    public record Fingerprint(int modules, BitSet bits) {
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * The jpeg decoding modes of the camera images
+ */
+public enum DecodeMode {
+    COLOR("color", Imgcodecs.IMREAD_COLOR, 1),
+    GRAYSCALE("grayscale", Imgcodecs.IMREAD_GRAYSCALE, 1),
+    GRAYSCALE_2("grayscale2", Imgcodecs.IMREAD_REDUCED_GRAYSCALE_2, 2),
+    GRAYSCALE_4("grayscale4", Imgcodecs.IMREAD_REDUCED_GRAYSCALE_4, 4),
+    GRAYSCALE_8("grayscale8", Imgcodecs.IMREAD_REDUCED_GRAYSCALE_8, 8);
+
+    /**
+     * Returns the decode mode by configuration id
+     *
+     * @param id the id
+     */
+    public static DecodeMode fromId(String id) {
+        return Arrays.stream(values())
+                .filter(mode -> mode.id.equals(id))
+                .findAny()
+                .orElseThrow(() -> new IllegalArgumentException(format("Unknown decode mode \"%s\"", id)));
+    }
+
+    private final String id;
+    private final int flags;
+    private final int scale;
+
+    /**
+     * Creates the decode mode
+     *
+     * @param id    the configuration id
+     * @param flags the imdecode flags
+     * @param scale the scale of full frame relative to decoded image
+     */
+    DecodeMode(String id, int flags, int scale) {
+        this.id = id;
+        this.flags = flags;
+        this.scale = scale;
+    }
+
+    /**
+     * Returns the imdecode flags
+     */
+    public int flags() {
+        return flags;
+    }
+
+    /**
+     * Returns the configuration id
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * Returns the scale of full frame relative to decoded image
+     */
+    public int scale() {
+        return scale;
+    }
+}
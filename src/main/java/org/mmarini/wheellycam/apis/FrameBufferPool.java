@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Bounded pool of preallocated direct buffers for the jpeg images of a frame size.
+ * The pool is reallocated when the frame size changes
+ */
+public class FrameBufferPool {
+    public static final int DEFAULT_POOL_SIZE = 4;
+    private static final int MIN_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Returns the estimated jpeg buffer size for a frame size
+     *
+     * @param frameSize the frame size
+     */
+    static int bufferSize(int frameSize) {
+        return Math.max(CameraController.frameWidth(frameSize) * CameraController.frameHeight(frameSize) / 4,
+                MIN_BUFFER_SIZE);
+    }
+
+    private final int poolSize;
+    private final Deque<ByteBuffer> buffers;
+    private int frameSize;
+
+    /**
+     * Creates the pool
+     *
+     * @param poolSize the maximum number of pooled buffers
+     */
+    public FrameBufferPool(int poolSize) {
+        this.poolSize = poolSize;
+        this.buffers = new ArrayDeque<>(poolSize);
+        this.frameSize = -1;
+    }
+
+    /**
+     * Returns a buffer for the frame size
+     *
+     * @param frameSize the frame size
+     */
+    public synchronized ByteBuffer borrow(int frameSize) {
+        if (frameSize != this.frameSize) {
+            // Reallocates the pool for the new frame size
+            this.frameSize = frameSize;
+            buffers.clear();
+            for (int i = 0; i < poolSize; i++) {
+                buffers.push(ByteBuffer.allocateDirect(bufferSize(frameSize)));
+            }
+        }
+        ByteBuffer buffer = buffers.poll();
+        return buffer != null
+                ? buffer
+                : ByteBuffer.allocateDirect(bufferSize(frameSize));
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     * The buffer is discarded if the pool is full or the frame size changed
+     *
+     * @param frameSize the frame size of borrowed buffer
+     * @param buffer    the buffer
+     */
+    public synchronized void giveBack(int frameSize, ByteBuffer buffer) {
+        if (frameSize == this.frameSize && buffers.size() < poolSize) {
+            buffers.push(buffer.clear());
+        }
+    }
+}
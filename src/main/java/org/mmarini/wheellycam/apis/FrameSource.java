@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Produces the jpeg images of the camera
+ */
+public interface FrameSource extends Closeable {
+    /**
+     * Returns the direct buffer with at least the given capacity.
+     * The content up to the current position is preserved
+     *
+     * @param buffer the direct buffer
+     * @param size   the required capacity
+     */
+    static ByteBuffer ensureCapacity(ByteBuffer buffer, int size) {
+        if (size <= buffer.capacity()) {
+            return buffer;
+        }
+        ByteBuffer result = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2));
+        buffer.flip();
+        result.put(buffer);
+        return result;
+    }
+
+    /**
+     * Returns the direct buffer with the next jpeg image from position 0.
+     * The given buffer is returned or replaced by a larger one if it does not fit the image
+     *
+     * @param buffer the direct buffer
+     * @throws IOException in case of error
+     */
+    ByteBuffer read(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Returns true if the source pushes the frames at its own rate
+     */
+    default boolean streaming() {
+        return false;
+    }
+}
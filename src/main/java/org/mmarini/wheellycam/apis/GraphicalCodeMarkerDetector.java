@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.objdetect.GraphicalCodeDetector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Detects the markers with an OpenCV graphical code detector.
+ * Each thread reuses its own detector
+ */
+public class GraphicalCodeMarkerDetector implements MarkerDetector {
+    private final ThreadLocal<GraphicalCodeDetector> detectors;
+
+    /**
+     * Creates the marker detector
+     *
+     * @param detectorFactory the detector factory
+     */
+    protected GraphicalCodeMarkerDetector(Supplier<? extends GraphicalCodeDetector> detectorFactory) {
+        this.detectors = ThreadLocal.withInitial(detectorFactory);
+    }
+
+    @Override
+    public String decode(Mat image, float[] corners) {
+        Mat points = new Mat(4, 1, CvType.CV_32FC2);
+        try {
+            points.put(0, 0, corners);
+            return detectors.get().decode(image, points);
+        } finally {
+            points.release();
+        }
+    }
+
+    @Override
+    public List<CameraController.Marker> detect(Mat image, boolean multi) {
+        Mat points = new Mat();
+        try {
+            List<CameraController.Marker> result = new ArrayList<>();
+            if (multi) {
+                List<String> codes = new ArrayList<>();
+                if (detectors.get().detectAndDecodeMulti(image, codes, points)) {
+                    for (int i = 0; i < codes.size(); i++) {
+                        float[] corners = new float[8];
+                        points.get(i, 0, corners);
+                        result.add(new CameraController.Marker(codes.get(i), corners));
+                    }
+                }
+            } else {
+                String code = detectors.get().detectAndDecode(image, points);
+                if (!points.empty()) {
+                    float[] corners = new float[8];
+                    points.get(0, 0, corners);
+                    result.add(new CameraController.Marker(code, corners));
+                }
+            }
+            return result;
+        } finally {
+            points.release();
+        }
+    }
+
+    @Override
+    public List<float[]> locate(Mat image, boolean multi) {
+        Mat points = new Mat();
+        try {
+            boolean located = multi
+                    ? detectors.get().detectMulti(image, points)
+                    : detectors.get().detect(image, points);
+            List<float[]> result = new ArrayList<>();
+            if (located && !points.empty()) {
+                int n = multi ? points.rows() : 1;
+                for (int i = 0; i < n; i++) {
+                    float[] corners = new float[8];
+                    points.get(i, 0, corners);
+                    result.add(corners);
+                }
+            }
+            return result;
+        } finally {
+            points.release();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the latency distribution in log linear buckets (HDR style).
+ * The values below 2^SUB_BITS are recorded exactly, the greater ones in 2^SUB_BITS linear buckets
+ * for each power of 2 with relative error less than 2^-SUB_BITS.
+ * Recording is lock free and the summary resets the distribution to start a new interval
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    /**
+     * Returns the bucket index of the value
+     *
+     * @param value the value
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the highest value of the bucket
+     *
+     * @param index the bucket index
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long lowest = (1L << exp) | (sub << (exp - SUB_BITS));
+        return lowest + (1L << (exp - SUB_BITS)) - 1;
+    }
+
+    private final AtomicLongArray counts;
+
+    /**
+     * Creates the histogram
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Records the value
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        counts.incrementAndGet(index(value));
+    }
+
+    /**
+     * Returns the summary of recorded values and resets the histogram
+     */
+    public Summary reset() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.getAndSet(i, 0);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return new Summary(0, 0, 0, 0);
+        }
+        long p50Rank = (long) Math.ceil(count * 0.5);
+        long p99Rank = (long) Math.ceil(count * 0.99);
+        long p50 = 0;
+        long p99 = 0;
+        long max = 0;
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (snapshot[i] > 0) {
+                long prev = cumulative;
+                cumulative += snapshot[i];
+                if (prev < p50Rank && cumulative >= p50Rank) {
+                    p50 = highestValue(i);
+                }
+                if (prev < p99Rank && cumulative >= p99Rank) {
+                    p99 = highestValue(i);
+                }
+                max = highestValue(i);
+            }
+        }
+        return new Summary(count, p50, p99, max);
+    }
+
+    /**
+     * Summarizes the recorded values (highest equivalent values of the buckets)
+     *
+     * @param count the number of values
+     * @param p50   the median
+     * @param p99   the 99th percentile
+     * @param max   the maximum
+     */
+    public record Summary(long count, long p50, long p99, long max) {
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Collects the latencies of the capture stages (us)
+ */
+public class LatencyMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(LatencyMetrics.class);
+
+    private final Map<Stage, LatencyHistogram> histograms;
+
+    /**
+     * Creates the metrics
+     */
+    public LatencyMetrics() {
+        this.histograms = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Records the stage latency from the start instant
+     *
+     * @param stage     the stage
+     * @param startNano the start instant (ns)
+     */
+    public void record(Stage stage, long startNano) {
+        histograms.get(stage).record((System.nanoTime() - startNano) / 1000);
+    }
+
+    /**
+     * Logs the latency summary of the stages since the last report
+     */
+    public void report() {
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram.Summary summary = histograms.get(stage).reset();
+            logger.atInfo().log("Stage {} count {} p50 {} us p99 {} us max {} us",
+                    stage.id(), summary.count(), summary.p50(), summary.p99(), summary.max());
+        }
+    }
+
+    /**
+     * The capture stages
+     */
+    public enum Stage {
+        FETCH("fetch"),
+        DECODE("decode"),
+        DETECT("detect"),
+        FORMAT("format"),
+        PUBLISH("publish");
+
+        private final String id;
+
+        Stage(String id) {
+            this.id = id;
+        }
+
+        /**
+         * Returns the stage id
+         */
+        public String id() {
+            return id;
+        }
+    }
+}
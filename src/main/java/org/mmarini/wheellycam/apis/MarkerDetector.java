@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.opencv.core.Mat;
+
+import java.util.List;
+
+/**
+ * Detects the markers in the camera images.
+ * The implementations are created from configuration by the static method
+ * <code>create(JsonNode root, Locator locator)</code> of the class in the <code>class</code> property
+ */
+public interface MarkerDetector {
+    /**
+     * Returns the code of the marker located in the image or empty if not decoded
+     *
+     * @param image   the image
+     * @param corners the marker corners (x0, y0, ... x3, y3)
+     */
+    String decode(Mat image, float[] corners);
+
+    /**
+     * Returns the markers located in the image with their codes (empty code if located but not decoded)
+     *
+     * @param image the image
+     * @param multi true to detect all the markers else only the first one
+     */
+    List<CameraController.Marker> detect(Mat image, boolean multi);
+
+    /**
+     * Returns the corners of the markers located in the image (x0, y0, ... x3, y3)
+     *
+     * @param image the image
+     * @param multi true to locate all the markers else only the first one
+     */
+    List<float[]> locate(Mat image, boolean multi);
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+import static java.lang.String.format;
+
+/**
+ * Reads the frames from the camera mjpeg stream.
+ * The stream is opened once and reopened at the next read after any error.
+ * The camera paces the frames, so the reads are not scheduled at the capture interval
+ */
+public class MjpegFrameSource implements FrameSource {
+    private static final Logger logger = LoggerFactory.getLogger(MjpegFrameSource.class);
+
+    private final String streamUrl;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private HttpURLConnection connection;
+    private MjpegReader reader;
+
+    /**
+     * Creates the frame source
+     *
+     * @param streamUrl      the stream url
+     * @param connectTimeout the connection timeout (ms)
+     * @param readTimeout    the read timeout (ms)
+     */
+    public MjpegFrameSource(String streamUrl, int connectTimeout, int readTimeout) {
+        this.streamUrl = streamUrl;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public void close() {
+        if (connection != null) {
+            connection.disconnect();
+            connection = null;
+            reader = null;
+        }
+    }
+
+    /**
+     * Opens the stream
+     *
+     * @throws IOException in case of error
+     */
+    private void open() throws IOException {
+        logger.atInfo().log("Opening stream {} ...", streamUrl);
+        HttpURLConnection conn = (HttpURLConnection) URI.create(streamUrl).toURL().openConnection();
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        try {
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException(format("Unexpected status %d from %s", status, streamUrl));
+            }
+            String contentType = conn.getContentType();
+            if (contentType == null || !contentType.startsWith("multipart/")) {
+                throw new IOException(format("Unexpected content type %s from %s", contentType, streamUrl));
+            }
+            this.reader = new MjpegReader(new BufferedInputStream(conn.getInputStream()));
+            this.connection = conn;
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public ByteBuffer read(ByteBuffer buffer) throws IOException {
+        if (reader == null) {
+            open();
+        }
+        try {
+            return reader.read(buffer);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean streaming() {
+        return true;
+    }
+}
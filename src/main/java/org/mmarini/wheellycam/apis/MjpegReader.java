@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import static java.lang.String.format;
+
+/**
+ * Splits the jpeg parts of a multipart/x-mixed-replace stream.
+ * The parts are read incrementally from the stream into the given direct buffers
+ */
+public class MjpegReader {
+    private static final int MAX_LINE_LENGTH = 1024;
+    private static final String CONTENT_LENGTH = "Content-Length";
+
+    private final InputStream stream;
+    private final ReadableByteChannel channel;
+
+    /**
+     * Creates the reader
+     *
+     * @param stream the (buffered) input stream
+     */
+    public MjpegReader(InputStream stream) {
+        this.stream = stream;
+        this.channel = Channels.newChannel(stream);
+    }
+
+    /**
+     * Returns the direct buffer with the next jpeg part from position 0.
+     * The given buffer is returned or replaced by a larger one if it does not fit the part
+     *
+     * @param buffer the direct buffer
+     * @throws IOException in case of error
+     */
+    public ByteBuffer read(ByteBuffer buffer) throws IOException {
+        // Skips up to boundary
+        String line;
+        do {
+            line = readLine();
+        } while (!line.startsWith("--"));
+        // Reads the part headers
+        int contentLength = -1;
+        for (; ; ) {
+            line = readLine();
+            if (line.isEmpty()) {
+                break;
+            }
+            int sep = line.indexOf(':');
+            if (sep > 0 && line.substring(0, sep).trim().equalsIgnoreCase(CONTENT_LENGTH)) {
+                try {
+                    contentLength = Integer.parseInt(line.substring(sep + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException(format("Invalid header \"%s\"", line));
+                }
+            }
+        }
+        buffer.clear();
+        return contentLength >= 0
+                ? readContent(buffer, contentLength).flip()
+                : readJpeg(buffer).flip();
+    }
+
+    /**
+     * Returns the buffer with a part of given length
+     *
+     * @param buffer the buffer
+     * @param length the part length
+     * @throws IOException in case of error
+     */
+    private ByteBuffer readContent(ByteBuffer buffer, int length) throws IOException {
+        buffer = FrameSource.ensureCapacity(buffer, length);
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of stream");
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer with a part up to the jpeg end of image marker (0xff 0xd9)
+     *
+     * @param buffer the buffer
+     * @throws IOException in case of error
+     */
+    private ByteBuffer readJpeg(ByteBuffer buffer) throws IOException {
+        int prev = -1;
+        for (; ; ) {
+            int ch = stream.read();
+            if (ch < 0) {
+                throw new EOFException("Unexpected end of stream");
+            }
+            if (!buffer.hasRemaining()) {
+                buffer = FrameSource.ensureCapacity(buffer, buffer.capacity() + 1);
+            }
+            buffer.put((byte) ch);
+            if (prev == 0xff && ch == 0xd9) {
+                return buffer;
+            }
+            prev = ch;
+        }
+    }
+
+    /**
+     * Returns the next header line without line terminators
+     *
+     * @throws IOException in case of error
+     */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (; ; ) {
+            int ch = stream.read();
+            if (ch < 0) {
+                throw new EOFException("Unexpected end of stream");
+            }
+            if (ch == '\n') {
+                int n = line.length();
+                if (n > 0 && line.charAt(n - 1) == '\r') {
+                    line.setLength(n - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Header line too long");
+            }
+            line.append((char) ch);
+        }
+    }
+}
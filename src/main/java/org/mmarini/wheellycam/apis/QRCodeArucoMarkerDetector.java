@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.yaml.Locator;
+import org.opencv.objdetect.QRCodeDetectorAruco;
+
+/**
+ * Detects the qr codes with the OpenCV qr code detector based on aruco finder patterns
+ */
+public class QRCodeArucoMarkerDetector extends GraphicalCodeMarkerDetector {
+
+    /**
+     * Returns the marker detector from configuration
+     *
+     * @param root    the configuration document
+     * @param locator the detector configuration locator
+     */
+    public static QRCodeArucoMarkerDetector create(JsonNode root, Locator locator) {
+        return new QRCodeArucoMarkerDetector();
+    }
+
+    /**
+     * Creates the marker detector
+     */
+    public QRCodeArucoMarkerDetector() {
+        super(QRCodeDetectorAruco::new);
+    }
+}
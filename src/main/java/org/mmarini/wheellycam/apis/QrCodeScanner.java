@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.yaml.Locator;
+import org.mmarini.yaml.Utils;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Rect2d;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Scans the qr codes in the camera images.
+ * The markers are detected by the configured detector backend (classic qr code detector by default).
+ * In multi mode all the codes in the image are scanned else only the first one.
+ * When tracking is enabled the search is restricted to the region of the last located codes.
+ * With pyramid levels the codes are located in the image downscaled by 2^levels and
+ * decoded in the candidate regions at full resolution.
+ * When gating is enabled the last event is reused while the scene is unchanged.
+ * When caching is enabled the codes are located and decoded only if the code region is not cached
+ */
+public class QrCodeScanner {
+    private static final double CANDIDATE_PADDING = 0.25;
+
+    /**
+     * Returns the bounding box of the corners
+     *
+     * @param corners the corners (x0, y0, x1, y1, ...)
+     */
+    static Rect2d bounds(float[] corners) {
+        float minX = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < corners.length; i += 2) {
+            minX = Math.min(minX, corners[i]);
+            maxX = Math.max(maxX, corners[i]);
+            minY = Math.min(minY, corners[i + 1]);
+            maxY = Math.max(maxY, corners[i + 1]);
+        }
+        return new Rect2d(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Returns the scanner from configuration
+     *
+     * @param root    the configuration document
+     * @param locator the camera configuration locator
+     */
+    public static QrCodeScanner create(JsonNode root, Locator locator) {
+        Locator trackingLocator = locator.path("tracking");
+        RoiTracker tracker = trackingLocator.getNode(root).isMissingNode()
+                ? null
+                : RoiTracker.create(root, trackingLocator);
+        Locator gatingLocator = locator.path("gating");
+        ChangeGate gate = gatingLocator.getNode(root).isMissingNode()
+                ? null
+                : ChangeGate.create(root, gatingLocator);
+        Locator cacheLocator = locator.path("decodeCache");
+        DecodeCache cache = cacheLocator.getNode(root).isMissingNode()
+                ? null
+                : DecodeCache.create(root, cacheLocator);
+        int pyramidLevels = locator.path("pyramidLevels").getNode(root).asInt(0);
+        boolean multi = locator.path("multi").getNode(root).asBoolean(false);
+        Locator detectorLocator = locator.path("detector");
+        MarkerDetector detector = detectorLocator.getNode(root).isMissingNode()
+                ? new QRCodeMarkerDetector()
+                : Utils.createObject(root, detectorLocator, new Object[0], new Class<?>[0]);
+        return new QrCodeScanner(detector, tracker, gate, cache, pyramidLevels, multi);
+    }
+
+    /**
+     * Returns the bounding region of the corners padded by a fraction of size and clipped to the image
+     * or null if the region is outside the image
+     *
+     * @param corners the corners (x0, y0, x1, y1, ...)
+     * @param padding the padding relative to the corners size
+     * @param width   the image width
+     * @param height  the image height
+     */
+    static Rect region(float[] corners, double padding, int width, int height) {
+        Rect2d bounds = bounds(corners);
+        double pad = Math.max(bounds.width, bounds.height) * padding;
+        int x0 = Math.max((int) Math.floor(bounds.x - pad), 0);
+        int y0 = Math.max((int) Math.floor(bounds.y - pad), 0);
+        int x1 = Math.min((int) Math.ceil(bounds.x + bounds.width + pad), width);
+        int y1 = Math.min((int) Math.ceil(bounds.y + bounds.height + pad), height);
+        return x1 > x0 && y1 > y0
+                ? new Rect(x0, y0, x1 - x0, y1 - y0)
+                : null;
+    }
+
+    /**
+     * Moves and scales the corners
+     *
+     * @param corners the corners
+     * @param dx      the x offset
+     * @param dy      the y offset
+     * @param scale   the scale
+     */
+    private static void transform(float[] corners, float dx, float dy, float scale) {
+        for (int i = 0; i < corners.length; i += 2) {
+            corners[i] = (corners[i] + dx) * scale;
+            corners[i + 1] = (corners[i + 1] + dy) * scale;
+        }
+    }
+
+    private final MarkerDetector detector;
+    private final RoiTracker tracker;
+    private final ChangeGate gate;
+    private final DecodeCache cache;
+    private final int pyramidLevels;
+    private final boolean multi;
+
+    /**
+     * Creates the scanner
+     *
+     * @param detector      the marker detector
+     * @param tracker       the region tracker or null if no tracking
+     * @param gate          the change gate or null if no gating
+     * @param cache         the decode cache or null if no caching
+     * @param pyramidLevels the number of pyramid levels to locate the codes (0 to locate at full resolution)
+     * @param multi         true to scan all the codes in the image
+     */
+    public QrCodeScanner(MarkerDetector detector, RoiTracker tracker, ChangeGate gate,
+                         DecodeCache cache, int pyramidLevels, boolean multi) {
+        this.detector = requireNonNull(detector);
+        this.tracker = tracker;
+        this.gate = gate;
+        this.cache = cache;
+        this.pyramidLevels = pyramidLevels;
+        this.multi = multi;
+    }
+
+    /**
+     * Returns the qr codes located and decoded in the image at full resolution
+     * (empty code if located but not decoded)
+     *
+     * @param image the image
+     * @param multi true to scan all the codes
+     */
+    private List<CameraController.Marker> detect(Mat image, boolean multi) {
+        if (cache == null) {
+            return detector.detect(image, multi);
+        }
+        List<CameraController.Marker> result = new ArrayList<>();
+        for (float[] corners : detector.locate(image, multi)) {
+            DecodeCache.Fingerprint fingerprint = DecodeCache.fingerprint(image, corners);
+            String code = fingerprint != null ? cache.get(fingerprint) : null;
+            if (code == null) {
+                code = detector.decode(image, corners);
+                if (fingerprint != null && !code.isEmpty()) {
+                    cache.put(fingerprint, code);
+                }
+            }
+            result.add(new CameraController.Marker(code, corners));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the qr codes located in the downscaled image and decoded in the candidate regions at full resolution
+     * (empty code if located but not decoded)
+     *
+     * @param image the image
+     */
+    private List<CameraController.Marker> detectPyramid(Mat image) {
+        float factor = 1 << pyramidLevels;
+        Mat small = new Mat();
+        try {
+            Imgproc.resize(image, small, new Size(), 1 / factor, 1 / factor, Imgproc.INTER_AREA);
+            List<CameraController.Marker> result = new ArrayList<>();
+            for (float[] corners : detector.locate(small, multi)) {
+                transform(corners, 0, 0, factor);
+                Rect candidate = region(corners, CANDIDATE_PADDING, image.width(), image.height());
+                if (candidate != null) {
+                    Mat crop = image.submat(candidate);
+                    try {
+                        List<CameraController.Marker> markers = detect(crop, false);
+                        if (markers.isEmpty()) {
+                            // Keeps the coarse location
+                            result.add(new CameraController.Marker("", corners));
+                        } else {
+                            CameraController.Marker marker = markers.getFirst();
+                            transform(marker.points(), candidate.x, candidate.y, 1);
+                            result.add(marker);
+                        }
+                    } finally {
+                        crop.release();
+                    }
+                }
+            }
+            return result;
+        } finally {
+            small.release();
+        }
+    }
+
+    /**
+     * Clears the tracked region and the gated scene, e.g. at frame size change
+     */
+    public void reset() {
+        if (tracker != null) {
+            tracker.reset();
+        }
+        if (gate != null) {
+            gate.reset();
+        }
+    }
+
+    /**
+     * Returns the qr code event detected in the image
+     *
+     * @param timestamp the capture timestamp
+     * @param image     the decoded image
+     * @param scale     the scale of full frame relative to image
+     */
+    public CameraController.CameraEvent scan(long timestamp, Mat image, int scale) {
+        if (gate != null) {
+            CameraController.CameraEvent event = gate.reuse(timestamp, image);
+            if (event != null) {
+                return event;
+            }
+        }
+        Rect roi = tracker != null ? tracker.searchRegion(image.width(), image.height()) : null;
+        Mat target = roi != null ? image.submat(roi) : image;
+        try {
+            List<CameraController.Marker> located = pyramidLevels > 0
+                    ? detectPyramid(target)
+                    : detect(target, multi);
+            if (roi != null) {
+                // Moves to image space
+                for (CameraController.Marker marker : located) {
+                    transform(marker.points(), roi.x, roi.y, 1);
+                }
+            }
+            if (tracker != null) {
+                float[] corners = new float[located.size() * 8];
+                for (int i = 0; i < located.size(); i++) {
+                    System.arraycopy(located.get(i).points(), 0, corners, i * 8, 8);
+                }
+                tracker.update(located.isEmpty() ? null : corners, image.width(), image.height());
+            }
+            List<CameraController.Marker> markers = new ArrayList<>();
+            for (CameraController.Marker marker : located) {
+                if (!marker.code().isEmpty()) {
+                    // Rescales to full frame
+                    transform(marker.points(), 0, 0, scale);
+                    markers.add(marker);
+                }
+            }
+            CameraController.CameraEvent event = new CameraController.CameraEvent(timestamp,
+                    image.width() * scale, image.height() * scale, markers);
+            if (gate != null) {
+                gate.update(event, image.width(), image.height());
+            }
+            return event;
+        } finally {
+            // Releases the native memory
+            if (roi != null) {
+                target.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Restores the sequence order of values completed out of order.
+ * Each sequence number must be either put or skipped to let the following values through.
+ * The ordered values are taken by a single consumer and the producers never block,
+ * the pending values are bounded by the frames in flight in the pipeline
+ *
+ * @param <T> the value type
+ */
+public class Resequencer<T> {
+    private final Map<Long, Optional<T>> pending;
+    private long next;
+
+    /**
+     * Creates the resequencer
+     */
+    public Resequencer() {
+        this.pending = new HashMap<>();
+    }
+
+    /**
+     * Puts a value
+     *
+     * @param seq   the sequence number
+     * @param value the value
+     */
+    public synchronized void put(long seq, T value) {
+        pending.put(seq, Optional.of(value));
+        notifyAll();
+    }
+
+    /**
+     * Skips a sequence number without value
+     *
+     * @param seq the sequence number
+     */
+    public synchronized void skip(long seq) {
+        pending.put(seq, Optional.empty());
+        notifyAll();
+    }
+
+    /**
+     * Returns the next ordered value waiting for it
+     *
+     * @throws InterruptedException if interrupted
+     */
+    public synchronized T take() throws InterruptedException {
+        for (; ; ) {
+            Optional<T> value = pending.remove(next);
+            if (value == null) {
+                wait();
+            } else {
+                next++;
+                if (value.isPresent()) {
+                    return value.get();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.yaml.Locator;
+import org.opencv.core.Rect;
+
+/**
+ * Tracks the region of the last located qr code to restrict the search in the next frames.
+ * The search falls back to the full frame after a number of consecutive misses
+ * and periodically, so the codes entering the frame outside the region are found
+ */
+public class RoiTracker {
+    public static final double DEFAULT_PADDING = 0.5;
+    public static final int DEFAULT_MAX_MISSES = 3;
+    public static final int DEFAULT_REFRESH = 10;
+
+    /**
+     * Returns the tracker from configuration
+     *
+     * @param root    the configuration document
+     * @param locator the tracker configuration locator
+     */
+    public static RoiTracker create(JsonNode root, Locator locator) {
+        double padding = locator.path("padding").getNode(root).asDouble(DEFAULT_PADDING);
+        int maxMisses = locator.path("maxMisses").getNode(root).asInt(DEFAULT_MAX_MISSES);
+        int refresh = locator.path("refresh").getNode(root).asInt(DEFAULT_REFRESH);
+        return new RoiTracker(padding, maxMisses, refresh);
+    }
+
+    private final double padding;
+    private final int maxMisses;
+    private final int refresh;
+    private float[] corners;
+    private int misses;
+    private int tracked;
+    private int width;
+    private int height;
+
+    /**
+     * Creates the tracker
+     *
+     * @param padding   the padding of search region relative to the qr code size
+     * @param maxMisses the number of consecutive misses before searching the full frame
+     * @param refresh   the number of region searches before a full frame search (0 if never)
+     */
+    public RoiTracker(double padding, int maxMisses, int refresh) {
+        this.padding = padding;
+        this.maxMisses = maxMisses;
+        this.refresh = refresh;
+    }
+
+    /**
+     * Returns the search region in the image or null to search the full image
+     *
+     * @param width  the image width
+     * @param height the image height
+     */
+    public synchronized Rect searchRegion(int width, int height) {
+        if (corners == null || width != this.width || height != this.height) {
+            // No code or code located at a different resolution
+            return null;
+        }
+        if (refresh > 0 && ++tracked > refresh) {
+            // Searches the full frame for new codes
+            tracked = 0;
+            return null;
+        }
+        Rect region = QrCodeScanner.region(corners, padding, width, height);
+        return region == null || (region.width == width && region.height == height)
+                ? null
+                : region;
+    }
+
+    /**
+     * Clears the tracked region
+     */
+    public synchronized void reset() {
+        corners = null;
+        misses = 0;
+        tracked = 0;
+    }
+
+    /**
+     * Updates the tracker with the located qr code
+     *
+     * @param corners the qr code corners in the image (x0, y0, ... x3, y3) or null if not located
+     * @param width   the image width
+     * @param height  the image height
+     */
+    public synchronized void update(float[] corners, int width, int height) {
+        if (corners != null) {
+            this.corners = corners.clone();
+            this.width = width;
+            this.height = height;
+            misses = 0;
+        } else if (this.corners != null && ++misses >= maxMisses) {
+            this.corners = null;
+            misses = 0;
+        }
+    }
+}
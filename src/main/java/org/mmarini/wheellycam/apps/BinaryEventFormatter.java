@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apps;
+
+import org.mmarini.wheellycam.apis.CameraController;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formats the events in fixed layout binary frames into a reusable buffer.
+ * The frame fields are little endian:
+ * <pre>
+ * offset size
+ *      0    2 magic "QR"
+ *      2    2 length of the following bytes (50 + n)
+ *      4    8 timestamp (ms)
+ *     12    4 event sequence number
+ *     16    2 image width
+ *     18    2 image height
+ *     20   32 corners x0, y0, ... x3, y3 (float)
+ *     52    2 code length n (0 if no code)
+ *     54    n code (UTF-8)
+ * </pre>
+ * The formatter is not thread safe
+ */
+public class BinaryEventFormatter {
+    public static final int HEADER_SIZE = 54;
+    private static final short MAGIC = 0x5251;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private ByteBuffer buffer;
+
+    /**
+     * Creates the formatter
+     */
+    public BinaryEventFormatter() {
+        this.buffer = ByteBuffer.allocate(INITIAL_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Returns the buffer with the event frame.
+     * The buffer is reused by the next format
+     *
+     * @param event    the event
+     * @param marker   the decoded qr code or null if unrecognized
+     * @param sequence the event sequence number
+     */
+    public ByteBuffer format(CameraController.CameraEvent event, CameraController.Marker marker, int sequence) {
+        String code = marker != null ? marker.code() : "";
+        int maxSize = HEADER_SIZE + code.length() * 3;
+        if (buffer.capacity() < maxSize) {
+            buffer = ByteBuffer.allocate(maxSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear();
+        buffer.putShort(MAGIC)
+                .putShort((short) 0)
+                .putLong(event.timestamp())
+                .putInt(sequence)
+                .putShort((short) event.width())
+                .putShort((short) event.height());
+        for (int i = 0; i < 8; i++) {
+            buffer.putFloat(marker != null ? marker.points()[i] : 0);
+        }
+        int lengthPosition = buffer.position();
+        buffer.putShort((short) 0);
+        for (int i = 0; i < code.length(); i++) {
+            char ch = code.charAt(i);
+            if (ch >= 0x80) {
+                // Non ascii code
+                buffer.position(lengthPosition + 2);
+                buffer.put(code.getBytes(StandardCharsets.UTF_8));
+                break;
+            }
+            buffer.put((byte) ch);
+        }
+        int end = buffer.position();
+        buffer.putShort(2, (short) (end - 4));
+        buffer.putShort(lengthPosition, (short) (end - HEADER_SIZE));
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apps;
+
+import org.mmarini.wheellycam.apis.CameraController;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Formats the event lines into a reusable buffer without allocations.
+ * The lines are byte-identical to
+ * <code>qr %d %s %d %d %.1f %.1f %.1f %.1f %.1f %.1f %.1f %.1f</code> (or <code>qr %d ? %d %d 0 0 0 0 0 0 0 0</code>
+ * if no code) in english locale terminated by new line.
+ * The formatter is not thread safe
+ */
+public class EventFormatter {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final byte[] PREFIX = "qr ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NO_CODE = " ? ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NO_POINTS = " 0 0 0 0 0 0 0 0".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The maximum absolute value written in fixed point (the scaled value is exact in double)
+     */
+    private static final float MAX_FIXED_VALUE = 1e9f;
+
+    private ByteBuffer buffer;
+
+    /**
+     * Creates the formatter
+     */
+    public EventFormatter() {
+        this.buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Ensures the buffer capacity for additional bytes
+     *
+     * @param size the number of additional bytes
+     */
+    private void ensureCapacity(int size) {
+        if (buffer.remaining() < size) {
+            ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+            newBuffer.put(buffer.flip());
+            buffer = newBuffer;
+        }
+    }
+
+    /**
+     * Returns the buffer with the event line.
+     * The buffer is reused by the next format
+     *
+     * @param event  the event
+     * @param marker the decoded qr code or null if unrecognized
+     */
+    public ByteBuffer format(CameraController.CameraEvent event, CameraController.Marker marker) {
+        buffer.clear();
+        put(PREFIX);
+        putLong(event.timestamp());
+        if (marker == null) {
+            put(NO_CODE);
+            putLong(event.width());
+            putByte(' ');
+            putLong(event.height());
+            put(NO_POINTS);
+        } else {
+            putByte(' ');
+            putString(marker.code());
+            putByte(' ');
+            putLong(event.width());
+            putByte(' ');
+            putLong(event.height());
+            for (float point : marker.points()) {
+                putByte(' ');
+                putFixed1(point);
+            }
+        }
+        putByte('\n');
+        return buffer.flip();
+    }
+
+    /**
+     * Puts the bytes
+     *
+     * @param bytes the bytes
+     */
+    private void put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Puts a byte
+     *
+     * @param value the byte
+     */
+    private void putByte(int value) {
+        ensureCapacity(1);
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Puts the decimal digits of a non-negative value
+     *
+     * @param value the value
+     */
+    private void putDigits(long value) {
+        int n = 1;
+        for (long x = value / 10; x > 0; x /= 10) {
+            n++;
+        }
+        ensureCapacity(n);
+        int end = buffer.position() + n;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * Puts the value with one decimal digit rounded half up as <code>%.1f</code>
+     *
+     * @param value the value
+     */
+    private void putFixed1(float value) {
+        if (!Float.isFinite(value) || Math.abs(value) >= MAX_FIXED_VALUE) {
+            // Rare values are formatted by the platform
+            putString(String.format(Locale.ENGLISH, "%.1f", value));
+            return;
+        }
+        if (Float.floatToRawIntBits(value) < 0) {
+            putByte('-');
+        }
+        // The float scaled by 10 is exact in double
+        long scaled = (long) Math.floor(Math.abs((double) value) * 10 + 0.5);
+        putDigits(scaled / 10);
+        putByte('.');
+        putByte('0' + (int) (scaled % 10));
+    }
+
+    /**
+     * Puts the decimal value as <code>%d</code>
+     *
+     * @param value the value
+     */
+    private void putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            putString(String.valueOf(value));
+        } else if (value < 0) {
+            putByte('-');
+            putDigits(-value);
+        } else {
+            putDigits(value);
+        }
+    }
+
+    /**
+     * Puts the string encoded in UTF-8
+     *
+     * @param text the string
+     */
+    private void putString(String text) {
+        int n = text.length();
+        ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            char ch = text.charAt(i);
+            if (ch >= 0x80) {
+                // Non ascii text
+                buffer.position(buffer.position() - i);
+                put(text.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer.put((byte) ch);
+        }
+    }
+}
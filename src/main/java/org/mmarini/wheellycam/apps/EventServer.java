@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apps;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.mmarini.yaml.Locator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+/**
+ * Broadcasts the event lines to the connected clients.
+ * A single thread accepts the clients as non-blocking channels on a selector
+ * and writes the queued lines when the channels are writable.
+ * Each client has a bounded outbound queue and the slow client policy applies when it is full.
+ * The clients receive the text lines by default and select the binary frames sending the <code>bin</code> line
+ * (<code>text</code> line to select the text lines again)
+ */
+public class EventServer implements Closeable {
+    public static final int DEFAULT_PORT = 8100;
+    public static final int DEFAULT_QUEUE_SIZE = 64;
+    private static final int MAX_COMMAND_SIZE = 64;
+    private static final Logger logger = LoggerFactory.getLogger(EventServer.class);
+
+    /**
+     * Returns the server from configuration
+     *
+     * @param root    the configuration document
+     * @param locator the server configuration locator
+     */
+    public static EventServer create(JsonNode root, Locator locator) {
+        int port = locator.path("port").getNode(root).asInt(DEFAULT_PORT);
+        int queueSize = locator.path("clientQueueSize").getNode(root).asInt(DEFAULT_QUEUE_SIZE);
+        SlowClientPolicy policy = SlowClientPolicy.fromId(
+                locator.path("slowClient").getNode(root).asText(SlowClientPolicy.DROP_OLDEST.id()));
+        return new EventServer(port, queueSize, policy);
+    }
+
+    private final int port;
+    private final int queueSize;
+    private final SlowClientPolicy policy;
+    private final Queue<Payload> pending;
+    private final AtomicInteger binaryClients;
+    private final ByteBuffer readBuffer;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+
+    /**
+     * Creates the server
+     *
+     * @param port      the server port
+     * @param queueSize the maximum number of queued lines per client
+     * @param policy    the slow client policy
+     */
+    public EventServer(int port, int queueSize, SlowClientPolicy policy) {
+        this.port = port;
+        this.queueSize = queueSize;
+        this.policy = policy;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.binaryClients = new AtomicInteger();
+        this.readBuffer = ByteBuffer.allocate(256);
+    }
+
+    /**
+     * Accepts the client connection
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        InetSocketAddress address = (InetSocketAddress) channel.getRemoteAddress();
+        String name = address.getHostString() + ":" + address.getPort();
+        channel.register(selector, SelectionKey.OP_READ, new Client(channel, name, new ArrayDeque<>(), new AtomicLong()));
+        logger.atInfo().log("New client {}", name);
+    }
+
+    /**
+     * Queues the text data to the text clients and the binary data to the binary clients.
+     * The data is shared by the clients with read-only duplicates
+     *
+     * @param text   the text data
+     * @param binary the binary data or null if not sent
+     */
+    public void broadcast(ByteBuffer text, ByteBuffer binary) {
+        pending.offer(new Payload(text.asReadOnlyBuffer(), binary != null ? binary.asReadOnlyBuffer() : null));
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Returns the number of clients receiving binary frames
+     */
+    public int binaryClients() {
+        return binaryClients.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (selector != null) {
+            selector.close();
+        }
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+    }
+
+    /**
+     * Closes the client connection
+     *
+     * @param key the client key
+     */
+    private void close(SelectionKey key) {
+        Client client = (Client) key.attachment();
+        key.cancel();
+        if (client.binary()) {
+            binaryClients.decrementAndGet();
+        }
+        try {
+            client.channel().close();
+        } catch (IOException e) {
+            logger.atError().setCause(e).log("Error closing client {}", client.name());
+        }
+        logger.atInfo().log("Closed {} dropped {}", client.name(), client.dropped().get());
+    }
+
+    /**
+     * Queues the pending data to the clients
+     */
+    private void dispatch() {
+        for (Payload payload; (payload = pending.poll()) != null; ) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid() && key.attachment() instanceof Client client) {
+                    ByteBuffer data = client.binary() ? payload.binary() : payload.text();
+                    if (data == null) {
+                        // Binary data not encoded before the client handshake
+                        continue;
+                    }
+                    // Each client writes its own position on the shared bytes
+                    if (client.offer(data.duplicate(), queueSize, policy)) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    } else {
+                        logger.atWarn().log("Disconnecting slow client {}", client.name());
+                        close(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the client commands detecting the end of stream
+     *
+     * @param key the client key
+     */
+    private void read(SelectionKey key) throws IOException {
+        Client client = (Client) key.attachment();
+        readBuffer.clear();
+        if (client.channel().read(readBuffer) < 0) {
+            close(key);
+            return;
+        }
+        readBuffer.flip();
+        StringBuilder command = client.command();
+        while (readBuffer.hasRemaining()) {
+            char ch = (char) (readBuffer.get() & 0xff);
+            if (ch == '\n') {
+                select(client, command.toString().trim());
+                command.setLength(0);
+            } else if (command.length() < MAX_COMMAND_SIZE) {
+                command.append(ch);
+            }
+        }
+    }
+
+    /**
+     * Runs the selector loop
+     */
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                selector.select();
+                dispatch();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() instanceof Client client) {
+                            logger.atWarn().log("Error serving client {}: {}", client.name(), e.getMessage());
+                            close(key);
+                        } else {
+                            logger.atError().setCause(e).log("Error accepting client");
+                        }
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            logger.atDebug().setCause(e).log("Event server stopped");
+        }
+    }
+
+    /**
+     * Selects the client protocol by command
+     *
+     * @param client  the client
+     * @param command the command
+     */
+    private void select(Client client, String command) {
+        switch (command) {
+            case "bin" -> {
+                if (!client.binary()) {
+                    client.binary(true);
+                    binaryClients.incrementAndGet();
+                    logger.atInfo().log("Client {} selected binary frames", client.name());
+                }
+            }
+            case "text" -> {
+                if (client.binary()) {
+                    client.binary(false);
+                    binaryClients.decrementAndGet();
+                    logger.atInfo().log("Client {} selected text lines", client.name());
+                }
+            }
+            default -> logger.atWarn().log("Client {} sent unknown command \"{}\"", client.name(), command);
+        }
+    }
+
+    /**
+     * Starts the server
+     *
+     * @throws IOException in case of error
+     */
+    public EventServer start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "event-server");
+        thread.setDaemon(true);
+        thread.start();
+        logger.atInfo().log("Event server listening on port {}", port);
+        return this;
+    }
+
+    /**
+     * Writes the queued lines to the client
+     *
+     * @param key the client key
+     */
+    private void write(SelectionKey key) throws IOException {
+        Client client = (Client) key.attachment();
+        Deque<ByteBuffer> outbound = client.outbound();
+        while (!outbound.isEmpty()) {
+            ByteBuffer buffer = outbound.peek();
+            client.channel().write(buffer);
+            if (buffer.hasRemaining()) {
+                // Waits for writability
+                return;
+            }
+            outbound.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * The policy applied when the client outbound queue is full
+     */
+    public enum SlowClientPolicy {
+        DROP_OLDEST("dropOldest"),
+        DROP_NEWEST("dropNewest"),
+        DISCONNECT("disconnect");
+
+        /**
+         * Returns the policy by id
+         *
+         * @param id the id
+         */
+        public static SlowClientPolicy fromId(String id) {
+            return Arrays.stream(values())
+                    .filter(policy -> policy.id.equals(id))
+                    .findAny()
+                    .orElseThrow(() -> new IllegalArgumentException(format("Unknown slow client policy \"%s\"", id)));
+        }
+
+        private final String id;
+
+        SlowClientPolicy(String id) {
+            this.id = id;
+        }
+
+        /**
+         * Returns the policy id
+         */
+        public String id() {
+            return id;
+        }
+    }
+
+    /**
+     * Stores the client connection
+     */
+    static class Client {
+        private final SocketChannel channel;
+        private final String name;
+        private final Deque<ByteBuffer> outbound;
+        private final AtomicLong dropped;
+        private final StringBuilder command;
+        private boolean binary;
+
+        /**
+         * Creates the client
+         *
+         * @param channel  the channel
+         * @param name     the client name
+         * @param outbound the outbound buffers
+         * @param dropped  the number of dropped buffers
+         */
+        Client(SocketChannel channel, String name, Deque<ByteBuffer> outbound, AtomicLong dropped) {
+            this.channel = channel;
+            this.name = name;
+            this.outbound = outbound;
+            this.dropped = dropped;
+            this.command = new StringBuilder();
+        }
+
+        /**
+         * Returns true if the client receives binary frames
+         */
+        boolean binary() {
+            return binary;
+        }
+
+        /**
+         * Sets the binary frames protocol
+         *
+         * @param binary true if the client receives binary frames
+         */
+        void binary(boolean binary) {
+            this.binary = binary;
+        }
+
+        /**
+         * Returns the channel
+         */
+        SocketChannel channel() {
+            return channel;
+        }
+
+        /**
+         * Returns the pending command
+         */
+        StringBuilder command() {
+            return command;
+        }
+
+        /**
+         * Returns the number of dropped buffers
+         */
+        AtomicLong dropped() {
+            return dropped;
+        }
+
+        /**
+         * Returns the client name
+         */
+        String name() {
+            return name;
+        }
+
+        /**
+         * Returns true if the buffer is queued or dropped by the policy,
+         * false if the client must be disconnected
+         *
+         * @param buffer    the buffer
+         * @param queueSize the maximum number of queued buffers
+         * @param policy    the slow client policy
+         */
+        boolean offer(ByteBuffer buffer, int queueSize, SlowClientPolicy policy) {
+            if (outbound.size() < queueSize) {
+                outbound.add(buffer);
+                return true;
+            }
+            switch (policy) {
+                case DROP_OLDEST -> {
+                    ByteBuffer head = outbound.peek();
+                    if (head != null && head.position() > 0) {
+                        // Keeps the partially written buffer to preserve the stream framing
+                        if (outbound.size() < 2) {
+                            // Only the in-flight buffer would remain: drops the new one
+                            dropped.incrementAndGet();
+                            return true;
+                        }
+                        Iterator<ByteBuffer> iter = outbound.iterator();
+                        iter.next();
+                        iter.next();
+                        iter.remove();
+                    } else {
+                        outbound.poll();
+                    }
+                    outbound.add(buffer);
+                }
+                case DROP_NEWEST -> {
+                }
+                case DISCONNECT -> {
+                    return false;
+                }
+            }
+            dropped.incrementAndGet();
+            return true;
+        }
+
+        /**
+         * Returns the outbound buffers
+         */
+        Deque<ByteBuffer> outbound() {
+            return outbound;
+        }
+    }
+
+    /**
+     * Stores the data to broadcast
+     *
+     * @param text   the text data
+     * @param binary the binary data or null if not sent
+     */
+    record Payload(ByteBuffer text, ByteBuffer binary) {
+    }
+}
@@ -29,29 +29,23 @@
 package org.mmarini.wheellycam.apps;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import io.reactivex.rxjava3.core.Completable;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
 import org.mmarini.wheellycam.apis.CameraController;
+import org.mmarini.wheellycam.apis.CameraPipeline;
+import org.mmarini.wheellycam.apis.LatencyMetrics;
 import org.mmarini.yaml.Locator;
 import org.opencv.core.Core;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
-import java.util.concurrent.atomic.AtomicReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
-import static java.lang.String.format;
 import static org.mmarini.yaml.Utils.fromFile;
 
 /**
@@ -66,32 +60,12 @@ public class QRCode {
     }
 
     /**
-     * Returns the list of clean clients
+     * Returns the copy of the buffer content
+     *
+     * @param buffer the buffer
      */
-    static private List<Client> cleanClients(List<Client> clients) {
-        // Test and filter for closed socket
-        List<Client> closed = clients.stream()
-                .filter(client -> {
-                    try {
-                        client.socket.getInputStream().available();
-                        client.socket.getOutputStream().flush();
-                        return !client.socket.isConnected() || client.socket.isClosed();
-                    } catch (IOException e) {
-                        return true;
-                    }
-                })
-                .toList();
-        if (closed.isEmpty()) {
-            return clients;
-        }
-        clients.forEach(client ->
-                logger.atInfo().log("Closed {}:{}",
-                        client.socket.getInetAddress().getCanonicalHostName(),
-                        client.socket.getPort())
-        );
-        return clients.stream()
-                .filter(client -> !closed.contains(client))
-                .toList();
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        return ByteBuffer.allocate(buffer.remaining()).put(buffer.duplicate()).flip();
     }
 
     /**
@@ -129,130 +103,73 @@ public class QRCode {
         }
     }
 
-    /**
-     * Returns the string of qrcode result
-     *
-     * @param qrCode the qrcode result
-     */
-    private static String qrCode2String(CameraController.CameraEvent qrCode) {
-        return qrCode.qrcode().isEmpty()
-                ? format(Locale.ENGLISH, "qr %d ? %d %d 0 0 0 0 0 0 0 0",
-                qrCode.timestamp(),
-                qrCode.width(), qrCode.height())
-                : format(Locale.ENGLISH, "qr %d %s %d %d %.1f %.1f %.1f %.1f %.1f %.1f %.1f %.1f",
-                qrCode.timestamp(),
-                qrCode.qrcode(),
-                qrCode.width(), qrCode.height(),
-                qrCode.points().get(0, 0)[0],
-                qrCode.points().get(0, 0)[1],
-                qrCode.points().get(0, 1)[0],
-                qrCode.points().get(0, 1)[1],
-                qrCode.points().get(0, 2)[0],
-                qrCode.points().get(0, 2)[1],
-                qrCode.points().get(0, 3)[0],
-                qrCode.points().get(0, 3)[1]);
-    }
-
     private final Namespace args;
-    private final AtomicReference<List<Client>> clients;
+    private final EventFormatter formatter;
+    private final BinaryEventFormatter binaryFormatter;
+    private final LatencyMetrics metrics;
+    private int sequence;
+    private EventServer server;
 
     /**
      * @param args the argument
      */
     public QRCode(Namespace args) {
         this.args = args;
-        this.clients = new AtomicReference<>(List.of());
+        this.formatter = new EventFormatter();
+        this.binaryFormatter = new BinaryEventFormatter();
+        this.metrics = new LatencyMetrics();
     }
 
     /**
-     * Runs the application
+     * Publishes the event to all clients, one line per decoded qr code
+     *
+     * @param qrCode the qrcode result
      */
-    private void run() throws IOException {
-        logger.atInfo().log("Running {}", QRCode.class.getName());
-        JsonNode config = fromFile(args.getString("config"));
-        JsonSchemas.instance().validateOrThrow(config, QRCODE_SCHEMA_YML);
-        String url = Locator.locate("cameraUrl").getNode(config).asText();
-        int ledIntensity = Locator.locate("ledIntensity").getNode(config).asInt(255);
-        long captureInterval = Locator.locate("captureInterval").getNode(config).asLong(800);
-        long syncInterval = Locator.locate("syncInterval").getNode(config).asLong(30000);
-        int frameSize = Locator.locate("frameSize").getNode(config).asInt(CameraController.SIZE_320X240);
-        int serverPort = Locator.locate("port").getNode(config).asInt(8100);
-        CameraController cameraController = CameraController.create(url, ledIntensity, frameSize);
-        long syncTimeout = 0;
-        boolean synchro = false;
-        Schedulers.io().scheduleDirect(() -> runServer(serverPort));
-        for (; ; ) {
-            long time = System.currentTimeMillis();
-            if (time >= syncTimeout || !synchro) {
-                logger.atInfo().log("Synchronizing camera ...");
-                if (cameraController.sync()) {
-                    syncTimeout = time + syncInterval;
-                    synchro = true;
-                }
-            }
-            if (synchro) {
-                try {
-                    logger.atDebug().log("Capturing QRCode ...");
-                    CameraController.CameraEvent qrCode = cameraController.captureQrCode();
-                    String line = qrCode2String(qrCode);
-                    send(line);
-                    logger.atInfo().log("{}", line);
-                    Thread.sleep(captureInterval);
-                } catch (IOException e) {
-                    logger.atError().setCause(e).log("Error capturing qrcode");
-                    synchro = false;
-                } catch (InterruptedException e) {
-                    logger.atError().setCause(e).log("Error capturing qrcode");
-                }
+    private void publish(CameraController.CameraEvent qrCode) {
+        sequence++;
+        if (qrCode.markers().isEmpty()) {
+            publishMarker(qrCode, null);
+        } else {
+            for (CameraController.Marker marker : qrCode.markers()) {
+                publishMarker(qrCode, marker);
             }
         }
     }
 
     /**
-     * Runs socket server
+     * Publishes the marker line to all clients
      *
-     * @param serverPort the server port
+     * @param qrCode the qrcode result
+     * @param marker the decoded qr code or null if unrecognized
      */
-    private void runServer(int serverPort) {
-        try (ServerSocket serverSocket = new ServerSocket(serverPort)) {
-            for (; ; ) {
-                // Waits for a client access
-                Socket socket = serverSocket.accept();
-                logger.atInfo().log("New client {}:{}",
-                        socket.getInetAddress().getCanonicalHostName(),
-                        socket.getPort());
-                Client cli = new Client(socket,
-                        new PrintWriter(socket.getOutputStream(), true)
-                );
-                // Add list
-                this.clients.updateAndGet(list -> {
-                    List<Client> clients = new ArrayList<>(list);
-                    clients.add(cli);
-                    return clients;
-                });
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private void publishMarker(CameraController.CameraEvent qrCode, CameraController.Marker marker) {
+        long start = System.nanoTime();
+        ByteBuffer line = formatter.format(qrCode, marker);
+        // Binary frames are formatted only for binary clients
+        ByteBuffer frame = server.binaryClients() > 0
+                ? binaryFormatter.format(qrCode, marker, sequence)
+                : null;
+        metrics.record(LatencyMetrics.Stage.FORMAT, start);
+        start = System.nanoTime();
+        // The formatter buffers are reused so the clients share copies
+        server.broadcast(copy(line), frame != null ? copy(frame) : null);
+        metrics.record(LatencyMetrics.Stage.PUBLISH, start);
+        if (logger.isInfoEnabled()) {
+            logger.atInfo().log("{}", new String(line.array(), 0, line.limit() - 1, StandardCharsets.UTF_8));
         }
     }
 
     /**
-     * Sends a line to all clients
-     *
-     * @param line the line
+     * Runs the application
      */
-    private void send(String line) {
-        // Clean up the client list
-        List<Client> clients = this.clients.updateAndGet(QRCode::cleanClients);
-        for (Client client : clients) {
-            Completable.complete()
-                    .observeOn(Schedulers.io())
-                    .doOnComplete(() ->
-                            client.out.println(line))
-                    .subscribe();
-        }
-    }
-
-    record Client(Socket socket, PrintWriter out) {
+    private void run() throws IOException, InterruptedException {
+        logger.atInfo().log("Running {}", QRCode.class.getName());
+        JsonNode config = fromFile(args.getString("config"));
+        JsonSchemas.instance().validateOrThrow(config, QRCODE_SCHEMA_YML);
+        CameraController cameraController = CameraController.create(config, Locator.root());
+        this.server = EventServer.create(config, Locator.root()).start();
+        CameraPipeline pipeline = CameraPipeline.create(config, Locator.root(), cameraController,
+                metrics, this::publish);
+        pipeline.start().join();
     }
 }
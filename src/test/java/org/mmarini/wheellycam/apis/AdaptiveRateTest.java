@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveRateTest {
+
+    @Test
+    void idle() {
+        // Given ...
+        AdaptiveRate rate = new AdaptiveRate(100, 1000, 3000);
+
+        // When ...
+        long period = rate.update(false, 10000);
+
+        // Then ...
+        assertEquals(1000, period);
+    }
+
+    @Test
+    void inView() {
+        // Given ...
+        AdaptiveRate rate = new AdaptiveRate(100, 1000, 3000);
+        rate.seen(10000);
+
+        // When ...
+        long period = rate.update(false, 10500);
+
+        // Then ...
+        assertEquals(750, period);
+
+        // When ...
+        for (int i = 0; i < 20; i++) {
+            period = rate.update(false, 11000);
+        }
+
+        // Then ...
+        assertEquals(100, period);
+
+        // When ...
+        period = rate.update(false, 13500);
+
+        // Then ...
+        assertEquals(125, period);
+    }
+
+    @Test
+    void saturated() {
+        // Given ...
+        AdaptiveRate rate = new AdaptiveRate(100, 1000, 3000);
+        rate.seen(10000);
+        rate.update(false, 10000);
+        rate.update(false, 10000);
+
+        // When ...
+        long period = rate.update(true, 10000);
+
+        // Then ...
+        assertEquals(1000, period);
+    }
+}
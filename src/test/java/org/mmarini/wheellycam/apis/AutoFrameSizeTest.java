@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AutoFrameSizeTest {
+
+    static CameraController.CameraEvent event(int width, int height, float codeSize) {
+        return new CameraController.CameraEvent(0, width, height, List.of(
+                new CameraController.Marker("A", new float[]{10, 10, 10 + codeSize, 10, 10 + codeSize, 10 + codeSize, 10, 10 + codeSize})));
+    }
+
+    @Test
+    void ignoreOtherSizes() {
+        // Given ...
+        AutoFrameSize auto = new AutoFrameSize(1, 9, 60, 160, 1);
+
+        // When ...
+        int size = auto.update(event(640, 480, 200), CameraController.SIZE_320X240);
+
+        // Then ...
+        assertEquals(CameraController.SIZE_320X240, size);
+    }
+
+    @Test
+    void stepDown() {
+        // Given ...
+        AutoFrameSize auto = new AutoFrameSize(1, 9, 60, 160, 2);
+
+        // When ...
+        int size1 = auto.update(event(320, 240, 200), CameraController.SIZE_320X240);
+        int size2 = auto.update(event(320, 240, 200), CameraController.SIZE_320X240);
+
+        // Then ...
+        assertEquals(CameraController.SIZE_320X240, size1);
+        assertEquals(CameraController.SIZE_240X240, size2);
+    }
+
+    @Test
+    void stepUpByMisses() {
+        // Given ...
+        AutoFrameSize auto = new AutoFrameSize(1, 9, 60, 160, 2);
+        CameraController.CameraEvent missing = new CameraController.CameraEvent(0, 320, 240, List.of());
+
+        // When ...
+        auto.update(missing, CameraController.SIZE_320X240);
+        int size = auto.update(missing, CameraController.SIZE_320X240);
+
+        // Then ...
+        assertEquals(CameraController.SIZE_400X296, size);
+    }
+
+    @Test
+    void stable() {
+        // Given ...
+        AutoFrameSize auto = new AutoFrameSize(1, 9, 60, 160, 2);
+
+        // When ...
+        int size = CameraController.SIZE_320X240;
+        for (int i = 0; i < 10; i++) {
+            size = auto.update(event(320, 240, 100), size);
+        }
+
+        // Then ...
+        assertEquals(CameraController.SIZE_320X240, size);
+    }
+
+    @Test
+    void bounds() {
+        // Given ...
+        AutoFrameSize auto = new AutoFrameSize(5, 5, 60, 160, 1);
+
+        // When ...
+        int size = auto.update(event(320, 240, 200), CameraController.SIZE_320X240);
+
+        // Then ...
+        assertEquals(CameraController.SIZE_320X240, size);
+    }
+}
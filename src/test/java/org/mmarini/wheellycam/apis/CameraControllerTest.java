@@ -37,8 +37,6 @@ import org.opencv.core.Mat;
 
 import java.io.IOException;
 
-import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.matchesPattern;
 import static org.junit.jupiter.api.Assertions.*;
 
 class CameraControllerTest {
@@ -54,7 +52,7 @@ class CameraControllerTest {
         // Then ...
         assertNotNull(qrcode);
         assertEquals("A", qrcode.qrcode());
-        assertThat(qrcode.points().dump(), matchesPattern("\\[.*]"));
+        assertEquals(8, qrcode.points().length);
     }
 
     @Test
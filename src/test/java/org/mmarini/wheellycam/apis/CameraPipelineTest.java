@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CameraPipelineTest {
+
+    @Test
+    @Timeout(1)
+    void latestFrame() throws InterruptedException {
+        // Given a pipeline in latest frame mode with all the pooled buffers borrowed
+        FrameBufferPool pool = new FrameBufferPool(2);
+        CameraController camera = new CameraController(null, null, null, 255,
+                CameraController.SIZE_320X240, DecodeMode.COLOR, null, null, pool);
+        CameraPipeline pipeline = new CameraPipeline(camera, 0, null, 1000, 2, 1, true,
+                0, new LatencyMetrics(), event -> {
+        });
+        ByteBuffer first = pool.borrow(CameraController.SIZE_320X240);
+        ByteBuffer second = pool.borrow(CameraController.SIZE_320X240);
+        pipeline.putFrame(new CameraPipeline.Job(0, new CameraController.Frame(1, CameraController.SIZE_320X240, first)));
+
+        // When ...
+        pipeline.putFrame(new CameraPipeline.Job(1, new CameraController.Frame(2, CameraController.SIZE_320X240, second)));
+
+        // Then the superseded frame is dropped
+        assertEquals(1, pipeline.droppedFrames());
+        assertEquals(0, pipeline.processedFrames());
+        // and its buffer is returned to the pool
+        assertSame(first, pool.borrow(CameraController.SIZE_320X240));
+        // and its sequence is skipped
+        CameraController.CameraEvent event = new CameraController.CameraEvent(2, 320, 240, List.of());
+        pipeline.resequencer().put(1, event);
+        assertSame(event, pipeline.resequencer().take());
+    }
+}
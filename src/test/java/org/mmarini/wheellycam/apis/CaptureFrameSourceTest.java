@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CaptureFrameSourceTest {
+
+    static void serve(ServerSocket server, int length, int sent) {
+        Thread thread = new Thread(() -> {
+            try (Socket socket = server.accept()) {
+                OutputStream out = socket.getOutputStream();
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: image/jpeg\r\nContent-Length: " + length + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                out.write(new byte[sent]);
+                out.flush();
+                // Stalls the body
+                Thread.sleep(5000);
+            } catch (IOException | InterruptedException ignored) {
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Test
+    @Timeout(3)
+    void read() throws IOException {
+        // Given ...
+        try (ServerSocket server = new ServerSocket(0)) {
+            serve(server, 1000, 1000);
+            CaptureFrameSource source = CaptureFrameSource.create("http://localhost:" + server.getLocalPort(), 500, 500);
+
+            // When ...
+            ByteBuffer buffer = source.read(ByteBuffer.allocateDirect(10));
+
+            // Then ...
+            assertEquals(0, buffer.position());
+            assertEquals(1000, buffer.limit());
+        }
+    }
+
+    @Test
+    @Timeout(3)
+    void readStalledBody() throws IOException {
+        // Given ...
+        try (ServerSocket server = new ServerSocket(0)) {
+            serve(server, 1000, 10);
+            CaptureFrameSource source = CaptureFrameSource.create("http://localhost:" + server.getLocalPort(), 500, 500);
+
+            // When ... Then ...
+            assertThrows(HttpTimeoutException.class, () -> source.read(ByteBuffer.allocateDirect(1000)));
+        }
+    }
+}
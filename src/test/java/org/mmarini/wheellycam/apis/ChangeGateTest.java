@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ChangeGateTest {
+
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    static final CameraController.CameraEvent EVENT = new CameraController.CameraEvent(1, 320, 240, List.of(
+            new CameraController.Marker("A", new float[]{100, 100, 150, 100, 150, 150, 100, 150})));
+
+    static Mat image(int width, int height, int x) {
+        Mat image = new Mat(height, width, CvType.CV_8UC1, new Scalar(255));
+        Imgproc.rectangle(image, new Rect(x, height / 4, width / 4, height / 4), new Scalar(0), -1);
+        return image;
+    }
+
+    @Test
+    void changedScene() {
+        // Given ...
+        ChangeGate gate = new ChangeGate(2, 10);
+        gate.reuse(1, image(320, 240, 50));
+        gate.update(EVENT, 320, 240);
+
+        // When ...
+        CameraController.CameraEvent event = gate.reuse(2, image(320, 240, 150));
+
+        // Then ...
+        assertNull(event);
+    }
+
+    @Test
+    void maxSkips() {
+        // Given ...
+        ChangeGate gate = new ChangeGate(2, 1);
+        gate.reuse(1, image(320, 240, 50));
+        gate.update(EVENT, 320, 240);
+
+        // When ...
+        CameraController.CameraEvent first = gate.reuse(2, image(320, 240, 50));
+        CameraController.CameraEvent second = gate.reuse(3, image(320, 240, 50));
+
+        // Then ...
+        assertNotNull(first);
+        assertNull(second);
+    }
+
+    @Test
+    void reset() {
+        // Given ...
+        ChangeGate gate = new ChangeGate(2, 10);
+        gate.reuse(1, image(320, 240, 50));
+        gate.update(EVENT, 320, 240);
+
+        // When ...
+        gate.reset();
+
+        // Then ...
+        assertNull(gate.reuse(2, image(320, 240, 50)));
+    }
+
+    @Test
+    void resolutionChange() {
+        // Given ...
+        ChangeGate gate = new ChangeGate(2, 10);
+        gate.reuse(1, image(320, 240, 50));
+        gate.update(EVENT, 320, 240);
+
+        // When the same scene is captured at double resolution
+        CameraController.CameraEvent event = gate.reuse(2, image(640, 480, 100));
+
+        // Then ...
+        assertNull(event);
+    }
+
+    @Test
+    void reuseUnchangedScene() {
+        // Given ...
+        ChangeGate gate = new ChangeGate(2, 10);
+        CameraController.CameraEvent detect = gate.reuse(1, image(320, 240, 50));
+        gate.update(EVENT, 320, 240);
+
+        // When ...
+        CameraController.CameraEvent event = gate.reuse(2, image(320, 240, 50));
+
+        // Then ...
+        assertNull(detect);
+        assertNotNull(event);
+        assertEquals(2, event.timestamp());
+        assertEquals(320, event.width());
+        assertEquals(240, event.height());
+        assertSame(EVENT.markers(), event.markers());
+    }
+
+    @Test
+    void updateAtOtherResolution() {
+        // Given ...
+        ChangeGate gate = new ChangeGate(2, 10);
+        gate.reuse(1, image(320, 240, 50));
+
+        // When an event of a frame in flight at the previous resolution is detected
+        gate.update(EVENT, 640, 480);
+
+        // Then ...
+        assertNull(gate.reuse(2, image(320, 240, 50)));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.QRCodeEncoder;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DecodeCacheTest {
+
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    static Mat codeImage(String text) {
+        Mat code = new Mat();
+        QRCodeEncoder.create().encode(text, code);
+        // Crops the quiet zone
+        Mat inverted = new Mat();
+        Core.bitwise_not(code, inverted);
+        Mat symbol = code.submat(Imgproc.boundingRect(inverted));
+        Mat image = new Mat(240, 320, CvType.CV_8UC1, new Scalar(255));
+        Imgproc.resize(symbol, image.submat(new Rect(100, 60, 100, 100)), new Size(100, 100),
+                0, 0, Imgproc.INTER_NEAREST);
+        Imgproc.GaussianBlur(image, image, new Size(3, 3), 0);
+        return image;
+    }
+
+    static float[] corners(float x, float y, float size) {
+        return new float[]{x, y, x + size, y, x + size, y + size, x, y + size};
+    }
+
+    static DecodeCache.Fingerprint fingerprint(int... bits) {
+        BitSet result = new BitSet();
+        for (int bit : bits) {
+            result.set(bit);
+        }
+        return new DecodeCache.Fingerprint(21, result);
+    }
+
+    @Test
+    void distinctCodes() {
+        // Given ...
+        DecodeCache cache = new DecodeCache(2);
+        DecodeCache.Fingerprint first = DecodeCache.fingerprint(codeImage("wheelly-00"), corners(100, 60, 100));
+        cache.put(first, "wheelly-00");
+
+        // When ...
+        DecodeCache.Fingerprint second = DecodeCache.fingerprint(codeImage("wheelly-05"), corners(100, 60, 100));
+
+        // Then ...
+        assertNotNull(second);
+        assertNull(cache.get(second));
+        assertEquals("wheelly-00", cache.get(first));
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        // Given ...
+        DecodeCache cache = new DecodeCache(2);
+        cache.put(fingerprint(0), "A");
+        cache.put(fingerprint(1), "B");
+
+        // When ...
+        cache.get(fingerprint(0));
+        cache.put(fingerprint(2), "C");
+
+        // Then ...
+        assertEquals(2, cache.size());
+        assertEquals("A", cache.get(fingerprint(0)));
+        assertNull(cache.get(fingerprint(1)));
+        assertEquals("C", cache.get(fingerprint(2)));
+    }
+
+    @Test
+    void fingerprintStable() {
+        // Given ...
+        Mat image = codeImage("wheelly-01");
+        DecodeCache.Fingerprint expected = DecodeCache.fingerprint(image, corners(100, 60, 100));
+
+        // When the corners are perturbed by one pixel
+        DecodeCache.Fingerprint fingerprint = DecodeCache.fingerprint(image,
+                new float[]{101, 59, 199, 61, 201, 159, 99, 161});
+
+        // Then ...
+        assertNotNull(expected);
+        assertEquals(21, expected.modules());
+        assertEquals(expected, fingerprint);
+    }
+
+    @Test
+    void noFingerprint() {
+        // Given ...
+        Mat image = new Mat(240, 320, CvType.CV_8UC1, new Scalar(255));
+        Imgproc.rectangle(image, new Rect(120, 80, 60, 60), new Scalar(0), -1);
+
+        // When ...
+        DecodeCache.Fingerprint fingerprint = DecodeCache.fingerprint(image, corners(100, 60, 100));
+
+        // Then ...
+        assertNull(fingerprint);
+    }
+}
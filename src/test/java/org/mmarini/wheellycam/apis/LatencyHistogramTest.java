@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyHistogramTest {
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, 31, 32, 33, 63, 64, 1000, 123456, 1L << 40, Long.MAX_VALUE})
+    void bucketBounds(long value) {
+        // Given ...
+        int index = LatencyHistogram.index(value);
+
+        // When ...
+        long highest = LatencyHistogram.highestValue(index);
+
+        // Then ...
+        assertThat(highest, greaterThanOrEqualTo(value));
+        assertThat((double) (highest - value), lessThanOrEqualTo(value / 32.0));
+    }
+
+    @Test
+    void reset() {
+        // Given ...
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        // When ...
+        LatencyHistogram.Summary summary = histogram.reset();
+
+        // Then ...
+        assertEquals(1000, summary.count());
+        assertThat(summary.p50(), allOf(greaterThanOrEqualTo(500L), lessThanOrEqualTo(516L)));
+        assertThat(summary.p99(), allOf(greaterThanOrEqualTo(990L), lessThanOrEqualTo(1022L)));
+        assertThat(summary.max(), allOf(greaterThanOrEqualTo(1000L), lessThanOrEqualTo(1023L)));
+
+        // When ...
+        LatencyHistogram.Summary empty = histogram.reset();
+
+        // Then ...
+        assertEquals(0, empty.count());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MjpegReaderTest {
+    static final String BOUNDARY = "123456789000000000000987654321";
+    static final byte[] JPEG1 = {(byte) 0xff, (byte) 0xd8, 1, 2, 3, (byte) 0xff, (byte) 0xd9};
+    static final byte[] JPEG2 = {(byte) 0xff, (byte) 0xd8, 4, 5, 6, 7, 8, (byte) 0xff, (byte) 0xd9};
+
+    static byte[] part(byte[] jpeg, boolean withLength) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String header = "\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Type: image/jpeg\r\n"
+                + (withLength ? "Content-Length: " + jpeg.length + "\r\n" : "")
+                + "X-Timestamp: 123.456\r\n"
+                + "\r\n";
+        out.write(header.getBytes(StandardCharsets.US_ASCII));
+        out.write(jpeg);
+        return out.toByteArray();
+    }
+
+    static byte[] toBytes(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+
+    @Test
+    void readEndOfStream() throws IOException {
+        // Given ...
+        MjpegReader reader = new MjpegReader(new ByteArrayInputStream(part(JPEG1, true)));
+        ByteBuffer buffer = reader.read(ByteBuffer.allocateDirect(16));
+
+        // When ... Then ...
+        assertThrows(EOFException.class, () -> reader.read(buffer));
+    }
+
+    @Test
+    void readWithLength() throws IOException {
+        // Given ...
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(part(JPEG1, true));
+        stream.write(part(JPEG2, true));
+        MjpegReader reader = new MjpegReader(new ByteArrayInputStream(stream.toByteArray()));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+
+        // When ...
+        buffer = reader.read(buffer);
+        byte[] frame1 = toBytes(buffer);
+        buffer = reader.read(buffer);
+        byte[] frame2 = toBytes(buffer);
+
+        // Then ...
+        assertArrayEquals(JPEG1, frame1);
+        assertArrayEquals(JPEG2, frame2);
+    }
+
+    @Test
+    void readWithoutLength() throws IOException {
+        // Given ...
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(part(JPEG1, false));
+        stream.write(part(JPEG2, false));
+        MjpegReader reader = new MjpegReader(new ByteArrayInputStream(stream.toByteArray()));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+
+        // When ...
+        buffer = reader.read(buffer);
+        byte[] frame1 = toBytes(buffer);
+        buffer = reader.read(buffer);
+        byte[] frame2 = toBytes(buffer);
+
+        // Then ...
+        assertArrayEquals(JPEG1, frame1);
+        assertArrayEquals(JPEG2, frame2);
+    }
+}
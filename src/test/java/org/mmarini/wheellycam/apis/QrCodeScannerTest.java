@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Rect2d;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.QRCodeEncoder;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class QrCodeScannerTest {
+
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    private static final double EPSILON = 4;
+
+    static void assertBounds(double x, double y, double size, CameraController.Marker marker) {
+        Rect2d bounds = QrCodeScanner.bounds(marker.points());
+        assertThat(bounds.x, closeTo(x, EPSILON));
+        assertThat(bounds.y, closeTo(y, EPSILON));
+        assertThat(bounds.width, closeTo(size, EPSILON));
+        assertThat(bounds.height, closeTo(size, EPSILON));
+    }
+
+    static Mat frame(int scale) {
+        // Two codes in a 640x480 frame downscaled by the decode scale
+        Mat image = new Mat(480 / scale, 640 / scale, CvType.CV_8UC1, new Scalar(255));
+        paint(image, "wheelly-01", 80 / scale, 100 / scale, 160 / scale);
+        paint(image, "wheelly-02", 400 / scale, 200 / scale, 160 / scale);
+        Imgproc.GaussianBlur(image, image, new Size(3, 3), 0);
+        return image;
+    }
+
+    static List<CameraController.Marker> markers(CameraController.CameraEvent event) {
+        return event.markers().stream()
+                .sorted(Comparator.comparing(CameraController.Marker::code))
+                .toList();
+    }
+
+    static void paint(Mat image, String text, int x, int y, int size) {
+        Mat code = new Mat();
+        QRCodeEncoder.create().encode(text, code);
+        // Crops the quiet zone
+        Mat inverted = new Mat();
+        Core.bitwise_not(code, inverted);
+        Mat symbol = code.submat(Imgproc.boundingRect(inverted));
+        Imgproc.resize(symbol, image.submat(new Rect(x, y, size, size)), new Size(size, size),
+                0, 0, Imgproc.INTER_NEAREST);
+    }
+
+    @Test
+    void scanDecodeScale() {
+        // Given ...
+        QrCodeScanner scanner = new QrCodeScanner(new QRCodeMarkerDetector(), null, null, null, 0, true);
+
+        // When ...
+        CameraController.CameraEvent event = scanner.scan(1, frame(2), 2);
+
+        // Then ...
+        assertEquals(640, event.width());
+        assertEquals(480, event.height());
+        List<CameraController.Marker> markers = markers(event);
+        assertEquals(2, markers.size());
+        assertEquals("wheelly-01", markers.get(0).code());
+        assertBounds(80, 100, 160, markers.get(0));
+        assertEquals("wheelly-02", markers.get(1).code());
+        assertBounds(400, 200, 160, markers.get(1));
+    }
+
+    @Test
+    void scanMulti() {
+        // Given ...
+        QrCodeScanner scanner = new QrCodeScanner(new QRCodeMarkerDetector(), null, null, null, 0, true);
+
+        // When ...
+        CameraController.CameraEvent event = scanner.scan(1, frame(1), 1);
+
+        // Then ...
+        assertEquals(1, event.timestamp());
+        assertEquals(640, event.width());
+        assertEquals(480, event.height());
+        List<CameraController.Marker> markers = markers(event);
+        assertEquals(2, markers.size());
+        assertEquals("wheelly-01", markers.get(0).code());
+        assertBounds(80, 100, 160, markers.get(0));
+        assertEquals("wheelly-02", markers.get(1).code());
+        assertBounds(400, 200, 160, markers.get(1));
+    }
+
+    @Test
+    void scanPyramid() {
+        // Given ...
+        QrCodeScanner scanner = new QrCodeScanner(new QRCodeMarkerDetector(), null, null, null, 1, true);
+
+        // When ...
+        CameraController.CameraEvent event = scanner.scan(1, frame(1), 1);
+
+        // Then ...
+        List<CameraController.Marker> markers = markers(event);
+        assertEquals(2, markers.size());
+        assertEquals("wheelly-01", markers.get(0).code());
+        assertBounds(80, 100, 160, markers.get(0));
+        assertEquals("wheelly-02", markers.get(1).code());
+        assertBounds(400, 200, 160, markers.get(1));
+    }
+
+    @Test
+    void scanRegion() {
+        // Given a scanner tracking the codes of the first frame
+        RoiTracker tracker = new RoiTracker(0.05, 3, 0);
+        QrCodeScanner scanner = new QrCodeScanner(new QRCodeMarkerDetector(), tracker, null, null, 0, true);
+        scanner.scan(1, frame(2), 2);
+
+        // When ...
+        Rect region = tracker.searchRegion(320, 240);
+        CameraController.CameraEvent event = scanner.scan(2, frame(2), 2);
+
+        // Then ...
+        // The region is offset from the image origin
+        assertNotNull(region);
+        assertThat(region.x, greaterThan(0));
+        assertThat(region.y, greaterThan(0));
+        List<CameraController.Marker> markers = markers(event);
+        assertEquals(2, markers.size());
+        assertEquals("wheelly-01", markers.get(0).code());
+        assertBounds(80, 100, 160, markers.get(0));
+        assertEquals("wheelly-02", markers.get(1).code());
+        assertBounds(400, 200, 160, markers.get(1));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+class ResequencerTest {
+
+    static List<String> take(Resequencer<String> resequencer, int n) throws InterruptedException {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            result.add(resequencer.take());
+        }
+        return result;
+    }
+
+    @Test
+    @Timeout(1)
+    void putFromWorkers() throws InterruptedException {
+        // Given producers completing the later values first
+        Resequencer<String> resequencer = new Resequencer<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            long seq = i;
+            workers.add(Thread.ofPlatform().start(() -> resequencer.put(seq, String.valueOf(seq))));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // When ...
+        Thread.ofPlatform().start(() -> resequencer.put(0, "0")).join();
+
+        // Then ...
+        assertThat(take(resequencer, 4), contains("0", "1", "2", "3"));
+    }
+
+    @Test
+    @Timeout(1)
+    void putInOrder() throws InterruptedException {
+        // Given ...
+        Resequencer<String> resequencer = new Resequencer<>();
+
+        // When ...
+        resequencer.put(0, "a");
+        resequencer.put(1, "b");
+
+        // Then ...
+        assertThat(take(resequencer, 2), contains("a", "b"));
+    }
+
+    @Test
+    @Timeout(1)
+    void putOutOfOrder() throws InterruptedException {
+        // Given ...
+        Resequencer<String> resequencer = new Resequencer<>();
+
+        // When ...
+        resequencer.put(2, "c");
+        resequencer.put(1, "b");
+        resequencer.put(0, "a");
+
+        // Then ...
+        assertThat(take(resequencer, 3), contains("a", "b", "c"));
+    }
+
+    @Test
+    @Timeout(1)
+    void skip() throws InterruptedException {
+        // Given ...
+        Resequencer<String> resequencer = new Resequencer<>();
+
+        // When ...
+        resequencer.put(2, "c");
+        resequencer.put(0, "a");
+        resequencer.skip(1);
+
+        // Then ...
+        assertThat(take(resequencer, 2), contains("a", "c"));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apis;
+
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Rect;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RoiTrackerTest {
+
+    static float[] corners(float x, float y, float size) {
+        return new float[]{x, y, x + size, y, x + size, y + size, x, y + size};
+    }
+
+    @Test
+    void fallbackAfterMisses() {
+        // Given ...
+        RoiTracker tracker = new RoiTracker(0.5, 2, 0);
+        tracker.update(corners(100, 100, 50), 320, 240);
+
+        // When ...
+        tracker.update(null, 320, 240);
+        Rect first = tracker.searchRegion(320, 240);
+        tracker.update(null, 320, 240);
+        Rect second = tracker.searchRegion(320, 240);
+
+        // Then ...
+        assertEquals(new Rect(75, 75, 100, 100), first);
+        assertNull(second);
+    }
+
+    @Test
+    void refresh() {
+        // Given ...
+        RoiTracker tracker = new RoiTracker(0.5, 3, 2);
+        tracker.update(corners(100, 100, 50), 320, 240);
+
+        // When ...
+        Rect first = tracker.searchRegion(320, 240);
+        Rect second = tracker.searchRegion(320, 240);
+        Rect third = tracker.searchRegion(320, 240);
+        Rect fourth = tracker.searchRegion(320, 240);
+
+        // Then ...
+        assertEquals(new Rect(75, 75, 100, 100), first);
+        assertEquals(new Rect(75, 75, 100, 100), second);
+        assertNull(third);
+        assertEquals(new Rect(75, 75, 100, 100), fourth);
+    }
+
+    @Test
+    void reset() {
+        // Given ...
+        RoiTracker tracker = new RoiTracker(0.5, 3, 0);
+        tracker.update(corners(100, 100, 50), 320, 240);
+
+        // When ...
+        tracker.reset();
+
+        // Then ...
+        assertNull(tracker.searchRegion(320, 240));
+    }
+
+    @Test
+    void resolutionChange() {
+        // Given ...
+        RoiTracker tracker = new RoiTracker(0.5, 3, 0);
+
+        // When ...
+        tracker.update(corners(100, 100, 50), 320, 240);
+
+        // Then ...
+        assertNull(tracker.searchRegion(640, 480));
+    }
+
+    @Test
+    void trackRegion() {
+        // Given ...
+        RoiTracker tracker = new RoiTracker(0.5, 3, 0);
+
+        // When ...
+        Rect untracked = tracker.searchRegion(320, 240);
+        tracker.update(corners(100, 100, 50), 320, 240);
+        Rect tracked = tracker.searchRegion(320, 240);
+
+        // Then ...
+        assertNull(untracked);
+        assertEquals(new Rect(75, 75, 100, 100), tracked);
+    }
+}
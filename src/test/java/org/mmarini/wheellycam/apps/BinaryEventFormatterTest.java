@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apps;
+
+import org.junit.jupiter.api.Test;
+import org.mmarini.wheellycam.apis.CameraController;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BinaryEventFormatterTest {
+
+    @Test
+    void formatCode() {
+        // Given ...
+        BinaryEventFormatter formatter = new BinaryEventFormatter();
+        CameraController.Marker marker = new CameraController.Marker("città",
+                new float[]{1.5f, 2, 3, 4, 5, 6, 7, 8.25f});
+        CameraController.CameraEvent event = new CameraController.CameraEvent(1792336601206L, 640, 480, List.of(marker));
+
+        // When ...
+        ByteBuffer frame = formatter.format(event, marker, 3).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Then ...
+        byte[] code = "città".getBytes(StandardCharsets.UTF_8);
+        assertEquals(BinaryEventFormatter.HEADER_SIZE + code.length, frame.remaining());
+        assertEquals('Q', frame.get(0));
+        assertEquals('R', frame.get(1));
+        assertEquals(50 + code.length, frame.getShort(2));
+        assertEquals(1792336601206L, frame.getLong(4));
+        assertEquals(3, frame.getInt(12));
+        assertEquals(640, frame.getShort(16));
+        assertEquals(480, frame.getShort(18));
+        assertEquals(1.5f, frame.getFloat(20));
+        assertEquals(8.25f, frame.getFloat(48));
+        assertEquals(code.length, frame.getShort(52));
+        byte[] actual = new byte[code.length];
+        frame.get(54, actual);
+        assertEquals("città", new String(actual, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void formatNoCode() {
+        // Given ...
+        BinaryEventFormatter formatter = new BinaryEventFormatter();
+        CameraController.CameraEvent event = new CameraController.CameraEvent(1, 320, 240, List.of());
+
+        // When ...
+        ByteBuffer frame = formatter.format(event, null, 1).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Then ...
+        assertEquals(BinaryEventFormatter.HEADER_SIZE, frame.remaining());
+        assertEquals(50, frame.getShort(2));
+        assertEquals(0f, frame.getFloat(20));
+        assertEquals(0, frame.getShort(52));
+    }
+}
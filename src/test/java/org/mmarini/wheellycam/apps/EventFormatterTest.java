@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mmarini.wheellycam.apis.CameraController;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EventFormatterTest {
+
+    static String expected(CameraController.CameraEvent event, CameraController.Marker marker) {
+        return marker == null
+                ? format(Locale.ENGLISH, "qr %d ? %d %d 0 0 0 0 0 0 0 0\n",
+                event.timestamp(), event.width(), event.height())
+                : format(Locale.ENGLISH, "qr %d %s %d %d %.1f %.1f %.1f %.1f %.1f %.1f %.1f %.1f\n",
+                event.timestamp(), marker.code(), event.width(), event.height(),
+                marker.points()[0], marker.points()[1], marker.points()[2], marker.points()[3],
+                marker.points()[4], marker.points()[5], marker.points()[6], marker.points()[7]);
+    }
+
+    static String text(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+    }
+
+    @ParameterizedTest
+    @ValueSource(floats = {0f, -0f, 0.05f, 0.15f, 0.25f, 0.35f, 0.45f, -0.04f, -0.05f, -0.25f, 9.95f, 99.95f,
+            123.45f, 1599.95f, 1e-10f, 123456.78f, 1e9f, 3e38f, Float.NaN, Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY})
+    void formatPoint(float value) {
+        // Given ...
+        EventFormatter formatter = new EventFormatter();
+        CameraController.Marker marker = new CameraController.Marker("A",
+                new float[]{value, value, value, value, value, value, value, value});
+        CameraController.CameraEvent event = new CameraController.CameraEvent(1234, 320, 240, List.of(marker));
+
+        // When ...
+        ByteBuffer line = formatter.format(event, marker);
+
+        // Then ...
+        assertEquals(expected(event, marker), text(line));
+    }
+
+    @Test
+    void formatNoCode() {
+        // Given ...
+        EventFormatter formatter = new EventFormatter();
+        CameraController.CameraEvent event = new CameraController.CameraEvent(1792336601206L, 1600, 1200, List.of());
+
+        // When ...
+        ByteBuffer line = formatter.format(event, null);
+
+        // Then ...
+        assertEquals(expected(event, null), text(line));
+    }
+
+    @Test
+    void formatRandom() {
+        // Given ...
+        EventFormatter formatter = new EventFormatter();
+        Random random = new Random(1234);
+
+        for (int i = 0; i < 10000; i++) {
+            float[] points = new float[8];
+            for (int j = 0; j < points.length; j++) {
+                points[j] = (random.nextFloat() - 0.1f) * 1700;
+            }
+            CameraController.Marker marker = new CameraController.Marker("code-" + i, points);
+            CameraController.CameraEvent event = new CameraController.CameraEvent(random.nextLong(), 640, 480, List.of(marker));
+
+            // When ...
+            ByteBuffer line = formatter.format(event, marker);
+
+            // Then ...
+            assertEquals(expected(event, marker), text(line));
+        }
+    }
+
+    @Test
+    void formatUnicode() {
+        // Given ...
+        EventFormatter formatter = new EventFormatter();
+        CameraController.Marker marker = new CameraController.Marker("città ✓", new float[8]);
+        CameraController.CameraEvent event = new CameraController.CameraEvent(1, 320, 240, List.of(marker));
+
+        // When ...
+        ByteBuffer line = formatter.format(event, marker);
+
+        // Then ...
+        assertEquals(expected(event, marker), text(line));
+    }
+}
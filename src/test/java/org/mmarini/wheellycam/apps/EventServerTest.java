@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.wheellycam.apps;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventServerTest {
+
+    static ByteBuffer buffer(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static EventServer.Client client() {
+        return new EventServer.Client(null, "test", new ArrayDeque<>(), new AtomicLong());
+    }
+
+    static List<String> queued(EventServer.Client client) {
+        return client.outbound().stream()
+                .map(buffer -> StandardCharsets.UTF_8.decode(buffer.duplicate().rewind()).toString())
+                .toList();
+    }
+
+    @Test
+    void disconnect() {
+        // Given ...
+        EventServer.Client client = client();
+        client.offer(buffer("a"), 1, EventServer.SlowClientPolicy.DISCONNECT);
+
+        // When ...
+        boolean result = client.offer(buffer("b"), 1, EventServer.SlowClientPolicy.DISCONNECT);
+
+        // Then ...
+        assertFalse(result);
+    }
+
+    @Test
+    void dropNewest() {
+        // Given ...
+        EventServer.Client client = client();
+        client.offer(buffer("a"), 2, EventServer.SlowClientPolicy.DROP_NEWEST);
+        client.offer(buffer("b"), 2, EventServer.SlowClientPolicy.DROP_NEWEST);
+
+        // When ...
+        boolean result = client.offer(buffer("c"), 2, EventServer.SlowClientPolicy.DROP_NEWEST);
+
+        // Then ...
+        assertTrue(result);
+        assertThat(queued(client), contains("a", "b"));
+        assertEquals(1, client.dropped().get());
+    }
+
+    @Test
+    void dropOldest() {
+        // Given ...
+        EventServer.Client client = client();
+        client.offer(buffer("a"), 2, EventServer.SlowClientPolicy.DROP_OLDEST);
+        client.offer(buffer("b"), 2, EventServer.SlowClientPolicy.DROP_OLDEST);
+
+        // When ...
+        boolean result = client.offer(buffer("c"), 2, EventServer.SlowClientPolicy.DROP_OLDEST);
+
+        // Then ...
+        assertTrue(result);
+        assertThat(queued(client), contains("b", "c"));
+        assertEquals(1, client.dropped().get());
+    }
+
+    @Test
+    void dropOldestKeepsBoundWithPartialWrite() {
+        // Given ...
+        EventServer.Client client = client();
+        client.offer(buffer("aa"), 1, EventServer.SlowClientPolicy.DROP_OLDEST);
+        client.outbound().peek().position(1);
+
+        // When ...
+        client.offer(buffer("b"), 1, EventServer.SlowClientPolicy.DROP_OLDEST);
+
+        // Then ...
+        assertThat(queued(client), contains("aa"));
+        assertEquals(1, client.dropped().get());
+    }
+
+    @Test
+    void dropOldestKeepsPartialWrite() {
+        // Given ...
+        EventServer.Client client = client();
+        client.offer(buffer("aa"), 2, EventServer.SlowClientPolicy.DROP_OLDEST);
+        client.offer(buffer("b"), 2, EventServer.SlowClientPolicy.DROP_OLDEST);
+        client.outbound().peek().position(1);
+
+        // When ...
+        client.offer(buffer("c"), 2, EventServer.SlowClientPolicy.DROP_OLDEST);
+
+        // Then ...
+        assertThat(queued(client), contains("aa", "c"));
+        assertEquals(1, client.dropped().get());
+    }
+}